@@ -6,12 +6,13 @@ class Account
     String email;
     String contact;
 
-    static int newaccount_no = 214;
+    // shared with the BankApp in UserInterface.java, so numbers never clash or repeat
+    static AccountNumberAllocator numbers = AccountNumberAllocator.shared(214);
 
     Account(String name)
     {
         double first_deposit = 0;
-        this.account_number=newaccount_no++;
+        this.account_number=numbers.next();
         this.holder_name=name;
         this.balance=first_deposit;
         this.email=email;
@@ -61,6 +62,7 @@ class Account
         acc1.contact="9876543210";
         acc1.email="bhargender06@gmail.com";
         acc1.displayAccountDetails();
+        Account.numbers.release();
     }
  }
               
\ No newline at end of file
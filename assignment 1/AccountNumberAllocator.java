@@ -0,0 +1,155 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+// Hands out account numbers for both Account classes. The numbers are shared through one
+// small file, so they survive restarts and never repeat, even between programs running
+// side by side in the same folder. Each thread leases a block of numbers at a time (the
+// file records the end of the last block leased, under a file lock) and then numbers
+// accounts from its block with no locking at all. A block left unfinished by another
+// thread when the program stops is skipped, never reused. A file that cannot be read is
+// never overwritten: leasing fails instead, since starting over could repeat numbers.
+class AccountNumberAllocator {
+    static final String FILE = "account-numbers.txt";
+    static final int BLOCK = Integer.getInteger("accounts.block", 1000);
+
+    final Path file;
+    final Path lockFile;
+    final int block;
+    int first;          // lowest number the file has ever handed out
+    long reserved;      // every number below this belongs to somebody; guarded by this
+    final ThreadLocal<int[]> leases = ThreadLocal.withInitial(() -> new int[2]); // {next, end}
+
+    // The allocator in the current folder; firstNumber only counts if the file is new
+    static AccountNumberAllocator shared(int firstNumber) {
+        return new AccountNumberAllocator(Paths.get(FILE), firstNumber, BLOCK);
+    }
+
+    AccountNumberAllocator(Path file, int firstNumber, int block) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        this.block = Math.max(1, block);
+        this.first = firstNumber;
+        this.reserved = firstNumber;
+        try {
+            load();
+        } catch (IOException e) {
+            System.out.println(e.getMessage() + "; no new account numbers can be handed out");
+        }
+    }
+
+    int next() {
+        int[] lease = leases.get();
+        if (lease[0] >= lease[1]) {
+            lease(lease);
+        }
+        return lease[0]++;
+    }
+
+    // Keep future numbers above one that was loaded from saved accounts
+    synchronized void observe(int no) {
+        if (no >= reserved) {
+            reserved = no + 1L;
+        }
+    }
+
+    synchronized long reserved() {
+        return reserved;
+    }
+
+    private synchronized void lease(int[] lease) {
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                load(); // another program may have leased since
+                if (reserved + block > Integer.MAX_VALUE) {
+                    throw new IllegalStateException("No account numbers left");
+                }
+                lease[0] = (int) reserved;
+                reserved += block;
+                lease[1] = (int) reserved;
+                save();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reserve account numbers", e);
+        }
+    }
+
+    // Give back what is left of this thread's block, if nobody leased after it, so a
+    // clean restart carries on from the last number used
+    synchronized void release() {
+        int[] lease = leases.get();
+        if (lease[0] >= lease[1]) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock = ch.lock();
+            try {
+                load();
+                if (reserved == lease[1]) {
+                    reserved = lease[0];
+                    save();
+                }
+                lease[1] = lease[0];
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            System.out.println("Could not save account numbers: " + e.getMessage());
+        }
+    }
+
+    // Only a missing file means "start at firstNumber"; anything unreadable is an error
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties props = new Properties();
+        try (Reader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            props.load(r);
+            String firstText = props.getProperty("first");
+            String nextText = props.getProperty("next");
+            if (firstText == null || nextText == null) {
+                throw new IOException("Could not read " + file + ": it is incomplete");
+            }
+            int loadedFirst = Integer.parseInt(firstText.trim());
+            long next = Long.parseLong(nextText.trim());
+            if (next < loadedFirst) {
+                throw new IOException("Could not read " + file + ": next is below first");
+            }
+            first = loadedFirst;
+            reserved = Math.max(reserved, next);
+        } catch (IllegalArgumentException e) { // NumberFormatException, or a bad escape
+            throw new IOException("Could not read " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Written to a temporary file, synced and moved into place, so a crash never loses the mark
+    private void save() throws IOException {
+        Properties props = new Properties();
+        props.setProperty("first", Integer.toString(first));
+        props.setProperty("next", Long.toString(reserved));
+        StringWriter text = new StringWriter();
+        props.store(text, "account numbers below next are taken");
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -1,73 +1,2591 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
 
 class Account {
-    int accNo;
+    final int accNo;
     String name;
-    double balance;
-    String email;
-    String phone;
+    volatile long balance; // in paise; changed only under the account's monitor, read without it
+    volatile String email;
+    volatile String phone;
+    volatile History history; // made on the first deposit or withdrawal
     
-    static int nextNo = 1001;
+    static final AccountNumberAllocator NUMBERS = AccountNumberAllocator.shared(1001);
     
-    Account(String n, double amt, String e, String p) {
-        accNo = nextNo;
-        nextNo++;
+    // The number comes from NUMBERS for a new account, or from a snapshot or the journal;
+    // the opening amount has already been checked by the caller
+    Account(int no, String n, long paise, String e, String p) {
+        accNo = no;
         name = n;
-        balance = amt;
+        balance = paise;
         email = e;
         phone = p;
     }
     
-    void deposit(double amt) {
-        if (amt > 0) {
-            balance = balance + amt;
-            System.out.println("Money added. Balance: " + balance);
+    static final double MAX_RUPEES = 1e13; // far above any real balance, far below long paise
+    
+    // Longest name, email or phone in UTF-8 bytes, as the journal stores the length in a short.
+    // The snapshot's writeUTF takes 65535 bytes of modified UTF-8, never more than twice this.
+    static final int MAX_TEXT = Short.MAX_VALUE;
+    
+    static boolean fits(String s) {
+        return s == null || s.length() <= MAX_TEXT / 3 || s.getBytes(StandardCharsets.UTF_8).length <= MAX_TEXT;
+    }
+    
+    // Rupees as typed by the user to whole paise, rounding half-even like a bank would;
+    // -1 for NaN, infinities, negative amounts and amounts of MAX_RUPEES or more
+    static long toPaise(double amt) {
+        if (!Double.isFinite(amt) || amt < 0 || amt >= MAX_RUPEES) {
+            return -1;
+        }
+        return BigDecimal.valueOf(amt).setScale(2, RoundingMode.HALF_EVEN).movePointRight(2).longValueExact();
+    }
+    
+    static String rupees(long paise) {
+        StringBuilder sb = new StringBuilder(20);
+        appendRupees(sb, paise);
+        return sb.toString();
+    }
+    
+    static void appendRupees(StringBuilder sb, long paise) {
+        if (paise < 0) {
+            sb.append('-');
+            paise = -paise;
+        }
+        long cents = paise % 100;
+        sb.append(paise / 100).append('.').append(cents < 10 ? "0" : "").append(cents);
+    }
+    
+    // Adds paise and returns the new balance, or -1 if the balance would overflow
+    long credit(long paise) {
+        if (!BankMetrics.ON) {
+            return add(paise);
+        }
+        long start = BankMetrics.start();
+        long now = add(paise);
+        BankMetrics.DEPOSIT.record(start, now >= 0);
+        return now;
+    }
+    
+    // Takes paise and returns the new balance, or -1 if there is not enough money.
+    // The overdraft check and the update happen under one monitor, so two tellers
+    // can never both spend the same money.
+    long debit(long paise) {
+        if (!BankMetrics.ON) {
+            return take(paise);
+        }
+        long start = BankMetrics.start();
+        long now = take(paise);
+        BankMetrics.WITHDRAW.record(start, now >= 0);
+        return now;
+    }
+    
+    // The balance is changed under the account's monitor together with its statement row
+    // (and, in the callers, its journal record), so rows and records are in the same order
+    // as the changes and each balance follows from the one before. Different accounts
+    // never wait for each other; readers of balance take no lock.
+    private long add(long paise) {
+        synchronized (this) {
+            long old = balance;
+            if (old > Long.MAX_VALUE - paise) {
+                return -1;
+            }
+            balance = old + paise;
+            history().add(paise, old + paise);
+            return old + paise;
+        }
+    }
+    
+    private long take(long paise) {
+        synchronized (this) {
+            long old = balance;
+            if (paise > old) {
+                return -1;
+            }
+            balance = old - paise;
+            history().add(-paise, old - paise);
+            return old - paise;
+        }
+    }
+    
+    History history() {
+        History h = history;
+        if (h == null) {
+            synchronized (this) {
+                h = history;
+                if (h == null) {
+                    history = h = new History();
+                }
+            }
+        }
+        return h;
+    }
+    
+    // Returns the new balance, or -1 after saying why nothing changed. Success is reported
+    // by the caller, once the change is saved.
+    long deposit(double amt) {
+        long paise = toPaise(amt);
+        if (paise <= 0) {
+            BankMetrics.invalidAmount();
+            System.out.println("Invalid amount");
+            return -1;
+        }
+        long now = credit(paise);
+        if (now < 0) {
+            System.out.println("Amount too large");
+        }
+        return now;
+    }
+    
+    long withdraw(double amt) {
+        long paise = toPaise(amt);
+        if (paise <= 0) {
+            BankMetrics.invalidAmount();
+            System.out.println("Invalid amount");
+            return -1;
+        }
+        long now = debit(paise);
+        if (now < 0) {
+            System.out.println("Not enough money. Balance: " + rupees(balance));
+        }
+        return now;
+    }
+    
+    // Moves paise between two accounts. Transfers lock both accounts, always the lower
+    // account number first, so two opposite transfers cannot deadlock and transfers on
+    // unrelated accounts never wait for each other.
+    static boolean transfer(Account from, Account to, long paise) {
+        return transfer(from, to, paise, () -> 1) > 0;
+    }
+    
+    // What transfer returns when the payee's balance would pass Long.MAX_VALUE paise
+    // (-1 is BankApp.NOT_SAVED)
+    static final long OVERFLOW = -2;
+    
+    // As above, and once the money has moved runs record (the journal append) before the
+    // monitors are released. Returns what record returned, or if nothing moved 0 when the
+    // payer has too little and OVERFLOW when the payee could not take it.
+    static long transfer(Account from, Account to, long paise, LongSupplier record) {
+        if (!BankMetrics.ON) {
+            return move(from, to, paise, record);
+        }
+        long start = BankMetrics.start();
+        long seq = move(from, to, paise, record);
+        BankMetrics.TRANSFER.record(start, seq > 0);
+        return seq;
+    }
+    
+    // The legs use add and take rather than credit and debit, so a transfer is counted
+    // once, under TRANSFER, and not again as a deposit and a withdrawal. Every balance
+    // change holds the account's monitor, so with both held the checks below still hold
+    // when the money moves and a refused transfer leaves no statement rows behind.
+    private static long move(Account from, Account to, long paise, LongSupplier record) {
+        if (from == to || paise <= 0) {
+            return 0;
+        }
+        Account first = from.accNo < to.accNo ? from : to;
+        Account second = first == from ? to : from;
+        synchronized (first) {
+            synchronized (second) {
+                if (paise > from.balance) {
+                    return 0;
+                }
+                if (to.balance > Long.MAX_VALUE - paise) {
+                    return OVERFLOW;
+                }
+                from.take(paise);
+                to.add(paise);
+                return record.getAsLong();
+            }
+        }
+    }
+    
+    void show() {
+        System.out.println("Account Number: " + accNo);
+        System.out.println("Name: " + name);
+        System.out.println("Balance: " + rupees(balance));
+        System.out.println("Email: " + email);
+        System.out.println("Phone: " + phone);
+    }
+    
+    void updateContact(String e, String p) {
+        setContact(e, p);
+        System.out.println("Contact updated");
+    }
+    
+    void setContact(String e, String p) {
+        email = e;
+        phone = p;
+    }
+    
+    int getAccNo() {
+        return accNo;
+    }
+}
+
+// Deposits and withdrawals of one account, oldest first, as three parallel columns: when
+// (epoch millis), amount in paise (negative for money out) and the balance after it.
+// The columns grow in chunks that double from 8 rows up to 1024, so a quiet account stays
+// small and a busy one wastes at most one partly filled chunk: about 24 bytes a row.
+// Times never go backwards, so a date range is found by binary search.
+class History {
+    static final int FIRST_BITS = 3;
+    static final int FIRST = 1 << FIRST_BITS;
+    static final int MAX_CHUNK = 1024;
+    static final int RAMP_CHUNKS = 8; // chunks of 8, 16, ... 1024 rows
+    static final int RAMP_ROWS = FIRST * ((1 << RAMP_CHUNKS) - 1);
+    
+    interface Row {
+        void accept(long time, long amount, long balance);
+    }
+    
+    long[][] times = new long[4][];
+    long[][] amounts = new long[4][];
+    long[][] balances = new long[4][];
+    int size = 0;
+    long lastTime = 0;
+    int archived = 0; // rows already in the history archive; changed only while changes are paused
+    
+    static int chunk(int row) {
+        if (row < RAMP_ROWS) {
+            return 31 - Integer.numberOfLeadingZeros((row >> FIRST_BITS) + 1);
+        }
+        return RAMP_CHUNKS + (row - RAMP_ROWS) / MAX_CHUNK;
+    }
+    
+    static int offset(int row, int chunk) {
+        if (chunk < RAMP_CHUNKS) {
+            return row - FIRST * ((1 << chunk) - 1);
+        }
+        return (row - RAMP_ROWS) % MAX_CHUNK;
+    }
+    
+    void add(long amount, long balance) {
+        add(System.currentTimeMillis(), amount, balance);
+    }
+    
+    // A row with a given time, e.g. one rebuilt from the journal
+    synchronized void add(long time, long amount, long balance) {
+        int c = chunk(size);
+        if (c >= times.length) {
+            int grown = times.length * 2;
+            times = Arrays.copyOf(times, grown);
+            amounts = Arrays.copyOf(amounts, grown);
+            balances = Arrays.copyOf(balances, grown);
+        }
+        if (times[c] == null) {
+            int rows = c < RAMP_CHUNKS ? FIRST << c : MAX_CHUNK;
+            times[c] = new long[rows];
+            amounts[c] = new long[rows];
+            balances[c] = new long[rows];
+        }
+        lastTime = Math.max(lastTime, time);
+        int i = offset(size, c);
+        times[c][i] = lastTime;
+        amounts[c][i] = amount;
+        balances[c][i] = balance;
+        size++;
+    }
+    
+    synchronized int size() {
+        return size;
+    }
+    
+    long time(int row) {
+        int c = chunk(row);
+        return times[c][offset(row, c)];
+    }
+    
+    // First row at or after the given time
+    int firstAtOrAfter(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (time(mid) < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+    
+    // Rows from index first on, oldest first; returns how many there were
+    synchronized int forEachSince(int first, Row row) {
+        for (int n = first; n < size; n++) {
+            int c = chunk(n);
+            int at = offset(n, c);
+            row.accept(times[c][at], amounts[c][at], balances[c][at]);
+        }
+        return Math.max(0, size - first);
+    }
+    
+    // Rows with from <= time <= to, oldest first; returns how many there were
+    synchronized int forEach(long from, long to, Row row) {
+        int end = to == Long.MAX_VALUE ? size : firstAtOrAfter(to + 1);
+        int i = firstAtOrAfter(from);
+        for (int n = i; n < end; n++) {
+            int c = chunk(n);
+            int at = offset(n, c);
+            row.accept(times[c][at], amounts[c][at], balances[c][at]);
+        }
+        return Math.max(0, end - i);
+    }
+}
+
+// Accounts by number. Numbers come in leased blocks from Account.NUMBERS, so they are
+// nearly dense and an account lives at slot (accNo - base) of a paged array: O(1) lookup,
+// no boxed keys, and growing only allocates new 4096-slot pages instead of copying every
+// account.
+// Adding is synchronized; lookups take no lock and read slots with acquire semantics,
+// so tellers on other threads always see a fully built account.
+class AccountStore {
+    static final int PAGE_BITS = 12;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    static final int PAGE_MASK = PAGE_SIZE - 1;
+    
+    static final VarHandle PAGE = MethodHandles.arrayElementVarHandle(Account[][].class);
+    static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Account[].class);
+
+    final int base;
+    volatile Account[][] pages = new Account[16][];
+    volatile int count = 0;
+
+    AccountStore(int base) {
+        this.base = base;
+    }
+
+    synchronized void add(Account acc) {
+        long slot = (long) acc.getAccNo() - base;
+        if (slot < 0 || slot > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Account number out of range: " + acc.getAccNo());
+        }
+        int page = (int) (slot >>> PAGE_BITS);
+        Account[][] all = pages;
+        if (page >= all.length) {
+            Account[][] bigger = new Account[Math.max(all.length * 2, page + 1)][];
+            System.arraycopy(all, 0, bigger, 0, all.length);
+            pages = all = bigger;
+        }
+        if (all[page] == null) {
+            PAGE.setRelease(all, page, new Account[PAGE_SIZE]);
+        }
+        int i = (int) slot & PAGE_MASK;
+        if (all[page][i] == null) {
+            count++;
+        }
+        SLOT.setRelease(all[page], i, acc);
+    }
+
+    Account get(int no) {
+        long slot = (long) no - base;
+        if (slot < 0 || slot > Integer.MAX_VALUE) {
+            return null;
+        }
+        int page = (int) (slot >>> PAGE_BITS);
+        Account[][] all = pages;
+        if (page >= all.length) {
+            return null;
+        }
+        Account[] p = (Account[]) PAGE.getAcquire(all, page);
+        return p == null ? null : (Account) SLOT.getAcquire(p, (int) slot & PAGE_MASK);
+    }
+
+    int size() {
+        return count;
+    }
+    
+    int pageCount() {
+        return pages.length;
+    }
+    
+    Account[] page(int i) {
+        Account[][] all = pages;
+        return i < all.length ? (Account[]) PAGE.getAcquire(all, i) : null;
+    }
+    
+    void forEach(Consumer<Account> action) {
+        Account[][] all = pages;
+        for (int page = 0; page < all.length; page++) {
+            Account[] p = (Account[]) PAGE.getAcquire(all, page);
+            for (int i = 0; p != null && i < PAGE_SIZE; i++) {
+                Account acc = (Account) SLOT.getAcquire(p, i);
+                if (acc != null) {
+                    action.accept(acc);
+                }
+            }
+        }
+    }
+}
+
+// Counts of how long something took, in buckets that grow with the value: 8 buckets per
+// power of two, so any reported percentile is within 12.5% of the true value. Each bucket
+// is a LongAdder, so threads recording at once do not contend, and recording never
+// allocates once a bucket has been used.
+class LatencyHistogram {
+    static final int SUB_BITS = 3;
+    static final int SUB_COUNT = 1 << SUB_BITS;
+    static final VarHandle BUCKET = MethodHandles.arrayElementVarHandle(LongAdder[].class);
+    
+    final LongAdder[] counts = new LongAdder[64 << SUB_BITS];
+    final LongAccumulator max = new LongAccumulator(Math::max, 0);
+    
+    static int bucket(long v) {
+        if (v < SUB_COUNT) {
+            return (int) Math.max(0, v);
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        return ((msb - SUB_BITS + 1) << SUB_BITS) + (int) ((v >>> (msb - SUB_BITS)) & (SUB_COUNT - 1));
+    }
+    
+    static long lowest(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int msb = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        return (long) (SUB_COUNT + (bucket & (SUB_COUNT - 1))) << (msb - SUB_BITS);
+    }
+    
+    void record(long value) {
+        int b = bucket(value);
+        LongAdder c = (LongAdder) BUCKET.getAcquire(counts, b);
+        if (c == null) {
+            BUCKET.compareAndSet(counts, b, null, new LongAdder());
+            c = (LongAdder) BUCKET.getAcquire(counts, b);
+        }
+        c.increment();
+        max.accumulate(value);
+    }
+    
+    long count(int bucket) {
+        LongAdder c = (LongAdder) BUCKET.getAcquire(counts, bucket);
+        return c == null ? 0 : c.sum();
+    }
+    
+    long count() {
+        long n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            n += count(i);
+        }
+        return n;
+    }
+    
+    long max() {
+        return max.get();
+    }
+    
+    // Highest value in the bucket holding the p-th percentile (0-100), never above the max seen
+    long percentile(double p) {
+        long n = count();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += count(i);
+            if (seen >= rank) {
+                return Math.min(max.get(), lowest(i + 1) - 1);
+            }
+        }
+        return max.get();
+    }
+    
+    // Values are nanoseconds; shown in microseconds, or nanoseconds when that is too coarse
+    String summary(String what) {
+        long p50 = percentile(50);
+        long scale = p50 < 10_000 ? 1 : 1000;
+        String unit = scale == 1 ? " ns" : " us";
+        return count() + " " + what + ", p50 " + p50 / scale + unit + ", p90 " + percentile(90) / scale
+                + unit + ", p99 " + percentile(99) / scale + unit + ", p99.9 " + percentile(99.9) / scale
+                + unit + ", max " + max.get() / scale + unit;
+    }
+}
+
+// Timings and failure counts for the hot paths, switched on with -Dbank.metrics=true.
+// Counters are LongAdders and timings go into a LatencyHistogram, so tellers on different
+// threads do not fight over one memory location. Every call is counted, but only one in
+// -Dbank.metricsSample calls (default 16) is timed: reading the clock twice costs more
+// than the operations themselves. ON is a constant: with metrics off the JIT removes
+// the timing code altogether. The figures are published
+// over JMX as BankApp:type=Operation,name=... and, with -Dbank.metricsFile=<path>,
+// appended to that file every -Dbank.metricsEvery seconds (default 10).
+class BankMetrics {
+    static final boolean ON = Boolean.getBoolean("bank.metrics");
+    static final int SAMPLE_MASK = Integer.highestOneBit(Math.max(1, Integer.getInteger("bank.metricsSample", 16))) - 1;
+    
+    static final class Op {
+        final String name;
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        
+        Op(String name) {
+            this.name = name;
+        }
+        
+        // startNanos comes from BankMetrics.start(): 0 when this call is not being timed
+        void record(long startNanos, boolean ok) {
+            calls.increment();
+            if (!ok) {
+                failures.increment();
+            }
+            if (startNanos != 0) {
+                latency.record(System.nanoTime() - startNanos);
+            }
+        }
+        
+        String report() {
+            return name + ": " + calls.sum() + " calls, " + failures.sum() + " failed; "
+                    + latency.summary("timed");
+        }
+    }
+    
+    static final Op FIND = new Op("findAccount");     // failure: Account not found
+    static final Op DEPOSIT = new Op("deposit");      // failure: Amount too large
+    static final Op WITHDRAW = new Op("withdraw");    // failure: Not enough money
+    static final Op TRANSFER = new Op("transfer");    // failure: Not enough money
+    static final Op[] OPS = {FIND, DEPOSIT, WITHDRAW, TRANSFER};
+    static final LongAdder INVALID_AMOUNT = new LongAdder();
+    
+    static LatencyHistogram commits; // the journal's, once it is open
+    
+    static long start() {
+        return (ThreadLocalRandom.current().nextInt() & SAMPLE_MASK) == 0 ? System.nanoTime() : 0;
+    }
+    
+    static void invalidAmount() {
+        if (ON) {
+            INVALID_AMOUNT.increment();
+        }
+    }
+    
+    // Read-only long attributes backed by suppliers
+    static final class Attributes implements DynamicMBean {
+        final Map<String, LongSupplier> values = new LinkedHashMap<>();
+        
+        @Override
+        public Object getAttribute(String name) throws AttributeNotFoundException {
+            LongSupplier v = values.get(name);
+            if (v == null) {
+                throw new AttributeNotFoundException(name);
+            }
+            return v.getAsLong();
+        }
+        
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                LongSupplier v = values.get(name);
+                if (v != null) {
+                    list.add(new Attribute(name, v.getAsLong()));
+                }
+            }
+            return list;
+        }
+        
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+        
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+        
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+        
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanAttributeInfo[] infos = new MBeanAttributeInfo[values.size()];
+            int i = 0;
+            for (String name : values.keySet()) {
+                infos[i++] = new MBeanAttributeInfo(name, "long", name, true, false, false);
+            }
+            return new MBeanInfo(Attributes.class.getName(), "BankApp metrics", infos, null, null, null);
+        }
+    }
+    
+    static Attributes histogram(LatencyHistogram h) {
+        Attributes a = new Attributes();
+        a.values.put("Timed", h::count);
+        a.values.put("P50Nanos", () -> h.percentile(50));
+        a.values.put("P90Nanos", () -> h.percentile(90));
+        a.values.put("P99Nanos", () -> h.percentile(99));
+        a.values.put("P999Nanos", () -> h.percentile(99.9));
+        a.values.put("MaxNanos", h::max);
+        return a;
+    }
+    
+    // Registers the MBeans and starts the file dump; does nothing unless metrics are on
+    static void start(LatencyHistogram journalCommits) {
+        if (!ON) {
+            return;
+        }
+        commits = journalCommits;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (Op op : OPS) {
+                Attributes a = histogram(op.latency);
+                a.values.put("Calls", op.calls::sum);
+                a.values.put("Failures", op.failures::sum);
+                server.registerMBean(a, new ObjectName("BankApp:type=Operation,name=" + op.name));
+            }
+            if (commits != null) {
+                server.registerMBean(histogram(commits), new ObjectName("BankApp:type=Journal,name=commit"));
+            }
+            Attributes errors = new Attributes();
+            errors.values.put("AccountNotFound", FIND.failures::sum);
+            errors.values.put("NotEnoughMoney", () -> WITHDRAW.failures.sum() + TRANSFER.failures.sum());
+            errors.values.put("InvalidAmount", INVALID_AMOUNT::sum);
+            server.registerMBean(errors, new ObjectName("BankApp:type=Errors"));
+        } catch (JMException e) {
+            System.out.println("Could not publish metrics over JMX: " + e.getMessage());
+        }
+        String file = System.getProperty("bank.metricsFile");
+        if (file != null) {
+            Path path = Paths.get(file);
+            long every = Long.getLong("bank.metricsEvery", 10);
+            ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            timer.scheduleAtFixedRate(() -> dump(path), every, every, TimeUnit.SECONDS);
+        }
+    }
+    
+    static String report() {
+        StringBuilder sb = new StringBuilder();
+        for (Op op : OPS) {
+            sb.append(op.report()).append('\n');
+        }
+        sb.append("invalid amounts: ").append(INVALID_AMOUNT.sum()).append('\n');
+        if (commits != null) {
+            sb.append("journal: ").append(commits.summary("commits")).append('\n');
+        }
+        return sb.toString();
+    }
+    
+    static void dump(Path path) {
+        try {
+            Files.writeString(path, "== " + Instant.now() + "\n" + report(),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.out.println("Could not write metrics: " + e.getMessage());
+        }
+    }
+}
+
+// Append-only binary log of every account change since the last snapshot. The file starts
+// with "BJNL" and an epoch number; after that each record is
+//   int length, payload, int CRC32C of the payload
+// so a record torn by a crash is detected and dropped on recovery. Deposits, withdrawals
+// and transfers end with their time (epoch millis), from which replay rebuilds the
+// statement rows since the snapshot; older records without it are still read. A snapshot stores the
+// epoch of the journal that follows it, so a journal the snapshot already covers (a crash
+// between writing the snapshot and emptying the journal) is skipped instead of replayed.
+// A change and its record are made under the account's monitor (both monitors for a
+// transfer), so each account's records are in the order its balance changed and nobody
+// can act on a change whose record is not yet in the log ahead of theirs.
+// Changes append to an in-memory buffer; commit() then waits until the record is on disk.
+// Whoever commits first writes and fsyncs everything buffered so far, so many tellers
+// share one fsync (group commit). A commit window makes that caller wait a little first
+// to gather more records.
+class BankJournal implements Closeable {
+    static final byte CREATE = 'C';
+    static final byte DEPOSIT = 'D';
+    static final byte WITHDRAW = 'W';
+    static final byte TRANSFER = 'T';
+    static final byte CONTACT = 'U';
+    static final int MAX_RECORD = 1 << 20;
+    static final int MAGIC = 0x424A4E4C; // "BJNL"
+    static final int HEADER = 12;
+    
+    final FileChannel channel;
+    final boolean fsync;
+    final long windowNanos;
+    final LatencyHistogram commitLatency = new LatencyHistogram();
+    final Object syncLock = new Object();
+    final CRC32C crc = new CRC32C(); // guarded by this
+    
+    ByteBuffer pending = ByteBuffer.allocate(1 << 16); // guarded by this
+    long appended = 0; // guarded by this
+    long records; // guarded by this
+    long epoch; // guarded by this
+    volatile long durable = 0;
+    IOException broken; // guarded by syncLock; set when a failed write could not be undone
+    
+    // Opens the journal for appending after recovery; anything past validBytes is a torn tail
+    BankJournal(Path path, Replay replayed, boolean fsync, long windowNanos) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.epoch = replayed.epoch;
+        this.records = replayed.records;
+        if (replayed.validBytes < HEADER) {
+            startEpoch(replayed.epoch);
+        } else {
+            channel.truncate(replayed.validBytes);
+            channel.position(replayed.validBytes);
+        }
+        this.fsync = fsync;
+        this.windowNanos = windowNanos;
+    }
+    
+    synchronized long create(Account acc) {
+        if (!Account.fits(acc.name) || !Account.fits(acc.email) || !Account.fits(acc.phone)) {
+            throw new IllegalArgumentException(BatchRunner.TOO_LONG);
+        }
+        int at = begin(CREATE, acc.accNo);
+        pending.putLong(acc.balance);
+        putString(acc.name);
+        putString(acc.email);
+        putString(acc.phone);
+        return end(at);
+    }
+    
+    synchronized long deposit(int accNo, long paise) {
+        int at = begin(DEPOSIT, accNo);
+        pending.putLong(paise);
+        pending.putLong(System.currentTimeMillis());
+        return end(at);
+    }
+    
+    synchronized long withdraw(int accNo, long paise) {
+        int at = begin(WITHDRAW, accNo);
+        pending.putLong(paise);
+        pending.putLong(System.currentTimeMillis());
+        return end(at);
+    }
+    
+    synchronized long transfer(int from, int to, long paise) {
+        int at = begin(TRANSFER, from);
+        pending.putInt(to);
+        pending.putLong(paise);
+        pending.putLong(System.currentTimeMillis());
+        return end(at);
+    }
+    
+    // An end-of-day posting, written as a deposit or withdrawal with the posting's time
+    synchronized long posting(int accNo, long amount, long time) {
+        int at = begin(amount < 0 ? WITHDRAW : DEPOSIT, accNo);
+        pending.putLong(Math.abs(amount));
+        pending.putLong(time);
+        return end(at);
+    }
+    
+    synchronized long contact(int accNo, String email, String phone) {
+        if (!Account.fits(email) || !Account.fits(phone)) {
+            throw new IllegalArgumentException(BatchRunner.TOO_LONG);
+        }
+        int at = begin(CONTACT, accNo);
+        putString(email);
+        putString(phone);
+        return end(at);
+    }
+    
+    private int begin(byte type, int accNo) {
+        room(64);
+        int at = pending.position();
+        pending.putInt(0); // length, filled in by end()
+        pending.put(type);
+        pending.putInt(accNo);
+        return at;
+    }
+    
+    private void putString(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        room(b.length + 16);
+        pending.putShort((short) b.length); // callers check Account.fits first
+        pending.put(b);
+    }
+    
+    private long end(int at) {
+        int length = pending.position() - at - 4;
+        pending.putInt(at, length);
+        crc.reset();
+        crc.update(pending.array(), at + 4, length);
+        room(4);
+        pending.putInt((int) crc.getValue());
+        records++;
+        return ++appended;
+    }
+    
+    private void room(int bytes) {
+        if (pending.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + bytes));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+    
+    synchronized long lastAppended() {
+        return appended;
+    }
+    
+    synchronized long records() {
+        return records;
+    }
+    
+    // Returns once record seq is on disk. startNanos is when the change began, for the latency figures.
+    void commit(long seq, long startNanos) throws IOException {
+        if (durable < seq) {
+            synchronized (syncLock) {
+                if (durable < seq) {
+                    if (windowNanos > 0) {
+                        LockSupport.parkNanos(windowNanos);
+                    }
+                    if (broken != null) {
+                        throw new IOException("journal unusable since an earlier error: " + broken.getMessage());
+                    }
+                    ByteBuffer out;
+                    long upTo;
+                    synchronized (this) {
+                        out = pending;
+                        upTo = appended;
+                        pending = ByteBuffer.allocate(Math.max(1 << 16, out.capacity() / 2));
+                    }
+                    out.flip();
+                    long at = channel.position();
+                    try {
+                        while (out.hasRemaining()) {
+                            channel.write(out);
+                        }
+                        if (fsync) {
+                            channel.force(false);
+                        }
+                    } catch (IOException e) {
+                        unwrite(out, at, e);
+                        throw e;
+                    }
+                    durable = upTo;
+                }
+            }
+        }
+        commitLatency.record(System.nanoTime() - startNanos);
+    }
+    
+    // A failed write: cut the file back to where it started and put the records in front of
+    // pending, so the next commit writes them again before anything newer. If the file
+    // cannot be cut back, no later commit could be trusted, so commits fail from then on.
+    private void unwrite(ByteBuffer out, long at, IOException cause) {
+        synchronized (this) {
+            out.rewind();
+            pending.flip();
+            ByteBuffer merged = ByteBuffer.allocate(Math.max(1 << 16, out.remaining() + pending.remaining() + (1 << 12)));
+            merged.put(out).put(pending);
+            pending = merged;
+        }
+        try {
+            channel.truncate(at);
+            channel.position(at);
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            broken = e;
+        }
+    }
+    
+    synchronized long epoch() {
+        return epoch;
+    }
+    
+    // Empties the journal once a snapshot holds everything in it. Changes must be paused.
+    void reset(long newEpoch) throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                pending.clear();
+                try {
+                    startEpoch(newEpoch);
+                } catch (IOException e) {
+                    // the snapshot covers this journal now, so nothing more may be added to it
+                    broken = e;
+                    throw e;
+                }
+                records = 0;
+                durable = appended;
+                broken = null;
+            }
+        }
+    }
+    
+    private void startEpoch(long newEpoch) throws IOException {
+        channel.truncate(0);
+        channel.write(ByteBuffer.allocate(HEADER).putInt(MAGIC).putLong(newEpoch).flip(), 0);
+        channel.position(HEADER);
+        if (fsync) {
+            channel.force(true);
+        }
+        epoch = newEpoch;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (durable < lastAppended()) {
+            commit(lastAppended(), System.nanoTime());
+        }
+        channel.close();
+    }
+    
+    static class Replay {
+        long epoch = 0;
+        boolean covered = false;
+        long records = 0;
+        long validBytes = 0;
+        long tornBytes = 0;
+    }
+    
+    // Applies every intact record to the accounts, unless the snapshot (whose journal epoch is
+    // snapshotEpoch) already covers this journal. Deposits, withdrawals and transfers are
+    // replayed as plain additions, so the result does not depend on how records from
+    // concurrent tellers were interleaved.
+    static Replay replay(Path path, AccountStore accounts, long snapshotEpoch) throws IOException {
+        Replay r = new Replay();
+        r.epoch = snapshotEpoch;
+        if (!Files.exists(path)) {
+            return r;
+        }
+        long size = Files.size(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (size < HEADER || in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a bank journal");
+            }
+            long epoch = in.readLong();
+            if (epoch < snapshotEpoch) {
+                r.covered = true;
+                return r;
+            }
+            r.epoch = epoch;
+            r.validBytes = HEADER;
+            CRC32C check = new CRC32C();
+            byte[] payload = new byte[256];
+            while (r.validBytes + 4 <= size) {
+                int length = in.readInt();
+                if (length < 5 || length > MAX_RECORD || r.validBytes + 8 + length > size) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                in.readFully(payload, 0, length);
+                int stored = in.readInt();
+                check.reset();
+                check.update(payload, 0, length);
+                if ((int) check.getValue() != stored) {
+                    break;
+                }
+                apply(ByteBuffer.wrap(payload, 0, length), accounts);
+                r.records++;
+                r.validBytes += 8 + length;
+            }
+        } catch (EOFException e) {
+            // torn final record
+        }
+        r.tornBytes = size - r.validBytes;
+        return r;
+    }
+    
+    static void apply(ByteBuffer rec, AccountStore accounts) {
+        byte type = rec.get();
+        int accNo = rec.getInt();
+        if (type == CREATE) {
+            long paise = rec.getLong();
+            String name = getString(rec);
+            String email = getString(rec);
+            String phone = getString(rec);
+            accounts.add(new Account(accNo, name, paise, email, phone));
+            Account.NUMBERS.observe(accNo);
+            return;
+        }
+        Account acc = accounts.get(accNo);
+        if (acc == null) {
+            return;
+        }
+        switch (type) {
+            case DEPOSIT -> {
+                long paise = rec.getLong();
+                replayed(acc, paise, rec);
+            }
+            case WITHDRAW -> {
+                long paise = rec.getLong();
+                replayed(acc, -paise, rec);
+            }
+            case TRANSFER -> {
+                Account to = accounts.get(rec.getInt());
+                long paise = rec.getLong();
+                if (to != null) {
+                    replayed(acc, -paise, rec.duplicate());
+                    replayed(to, paise, rec);
+                }
+            }
+            case CONTACT -> {
+                acc.email = getString(rec);
+                acc.phone = getString(rec);
+            }
+            default -> { }
+        }
+    }
+    
+    // Adds amount to the balance and, if the record carries its time, the statement row.
+    // Replay runs on one thread before any teller starts.
+    static void replayed(Account acc, long amount, ByteBuffer rec) {
+        long now = acc.balance += amount;
+        if (rec.remaining() >= 8) {
+            acc.history().add(rec.getLong(), amount, now);
+        }
+    }
+    
+    static String getString(ByteBuffer rec) {
+        byte[] b = new byte[rec.getShort()];
+        rec.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
+
+// Every account in one file, so the journal can start over empty:
+//   "BANK", int version, long journal epoch, long history archive length (version 2 on),
+//   int first free number, int count, then per account
+//   accNo, balance in paise, name, email, phone; and a CRC32C of all of it at the end.
+// Written to a temporary file and moved into place, so a crash leaves the old snapshot.
+class BankSnapshot {
+    static final int MAGIC = 0x42414E4B; // "BANK"
+    static final int VERSION = 2;
+    
+    static class Loaded {
+        int accounts = -1;
+        long epoch = 0;
+        long historyLength = 0;
+    }
+    
+    static void write(Path path, AccountStore accounts, long epoch, long historyLength) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        CRC32C crc = new CRC32C();
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(ch), crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(epoch);
+            out.writeLong(historyLength);
+            out.writeInt((int) Account.NUMBERS.reserved());
+            out.writeInt(accounts.size());
+            IOException[] failed = new IOException[1];
+            accounts.forEach(acc -> {
+                try {
+                    out.writeInt(acc.accNo);
+                    out.writeLong(acc.balance);
+                    out.writeUTF(acc.name == null ? "" : acc.name);
+                    out.writeUTF(acc.email == null ? "" : acc.email);
+                    out.writeUTF(acc.phone == null ? "" : acc.phone);
+                } catch (IOException e) {
+                    failed[0] = e;
+                }
+            });
+            if (failed[0] != null) {
+                throw failed[0];
+            }
+            out.flush();
+            ch.write(ByteBuffer.allocate(4).putInt(0, (int) crc.getValue()));
+            ch.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    // Loads the snapshot into an empty store
+    static Loaded read(Path path, AccountStore accounts) throws IOException {
+        Loaded loaded = new Loaded();
+        if (!Files.exists(path)) {
+            return loaded;
+        }
+        byte[] all = Files.readAllBytes(path);
+        CRC32C crc = new CRC32C();
+        crc.update(all, 0, Math.max(0, all.length - 4));
+        if (all.length < 28 || ByteBuffer.wrap(all, all.length - 4, 4).getInt() != (int) crc.getValue()) {
+            throw new IOException(path + " is damaged (checksum mismatch)");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(all, 0, all.length - 4));
+        int version = in.readInt() == MAGIC ? in.readInt() : -1;
+        if (version != 1 && version != VERSION) {
+            throw new IOException(path + " is not a bank snapshot");
+        }
+        loaded.epoch = in.readLong();
+        loaded.historyLength = version >= 2 ? in.readLong() : 0;
+        int nextNo = in.readInt();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int no = in.readInt();
+            long balance = in.readLong();
+            accounts.add(new Account(no, in.readUTF(), balance, in.readUTF(), in.readUTF()));
+        }
+        Account.NUMBERS.observe(nextNo - 1);
+        loaded.accounts = count;
+        return loaded;
+    }
+}
+
+// Statement rows older than the journal. The journal is emptied at every snapshot, so just
+// before that each account's rows since the previous snapshot are appended here:
+//   int accNo, long time, long amount, long balance after
+// The snapshot records how long the archive was when it was taken. On startup the archive
+// is cut back to that length (rows past it were written for a snapshot that never landed
+// and are replayed from the journal instead), loaded, and the journal adds the rest.
+class HistoryArchive {
+    static final int ROW = 28;
+    
+    final Path path;
+    long length; // bytes covered by the current snapshot
+    
+    HistoryArchive(Path path) {
+        this.path = path;
+    }
+    
+    // Loads the first length bytes of rows into the accounts' statements
+    void load(long validLength, AccountStore accounts) throws IOException {
+        length = validLength;
+        if (length == 0 || !Files.exists(path)) {
+            length = 0;
+            return;
+        }
+        if (Files.size(path) < length) {
+            throw new IOException(path + " is shorter than the snapshot says");
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            for (long at = 0; at < length; at += ROW) {
+                Account acc = accounts.get(in.readInt());
+                long time = in.readLong();
+                long amount = in.readLong();
+                long balance = in.readLong();
+                if (acc != null) {
+                    acc.history().add(time, amount, balance);
+                }
+            }
+        }
+        accounts.forEach(acc -> {
+            if (acc.history != null) {
+                acc.history.archived = acc.history.size();
+            }
+        });
+    }
+    
+    // Writes every row not archived yet after the covered length and syncs it; returns the
+    // new length. Changes must be paused. Nothing counts as archived until saved() is called.
+    long append(AccountStore accounts) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ch.truncate(length);
+            ch.position(length);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+            long[] rows = new long[1];
+            IOException[] failed = new IOException[1];
+            accounts.forEach(acc -> {
+                History h = acc.history;
+                if (h == null || failed[0] != null) {
+                    return;
+                }
+                rows[0] += h.forEachSince(h.archived, (time, amount, balance) -> {
+                    try {
+                        out.writeInt(acc.accNo);
+                        out.writeLong(time);
+                        out.writeLong(amount);
+                        out.writeLong(balance);
+                    } catch (IOException e) {
+                        failed[0] = e;
+                    }
+                });
+            });
+            if (failed[0] != null) {
+                throw failed[0];
+            }
+            out.flush();
+            ch.force(false);
+            return length + rows[0] * ROW;
+        }
+    }
+    
+    // The snapshot recording newLength is in place: those rows are archived for good
+    void saved(long newLength, AccountStore accounts) {
+        length = newLength;
+        accounts.forEach(acc -> {
+            if (acc.history != null) {
+                acc.history.archived = acc.history.size();
+            }
+        });
+    }
+}
+
+// Applies a transaction file to the accounts, one transaction per line:
+//   C,name,money,email,phone   create an account (result: the new account number)
+//   D,accNo,amount             deposit
+//   W,accNo,amount             withdraw
+// Lines are read in blocks. A block is parsed in parallel slices, then applied with each
+// account owned by a single worker (accNo % workers), so every account still sees its
+// transactions in file order. Each input line gets one line in the result file:
+//   lineNo,OK,balance   or   lineNo,ERR,reason
+class BatchRunner {
+    static final int BLOCK = 1 << 16;
+    static final byte BAD = 0;
+    static final byte DEPOSIT = 1;
+    static final byte WITHDRAW = 2;
+    
+    static final String BAD_LINE = "Bad line";
+    static final String INVALID_AMOUNT = "Invalid amount";
+    static final String NOT_FOUND = "Account not found";
+    static final String NOT_ENOUGH = "Not enough money";
+    static final String NO_NUMBERS = "No account numbers available";
+    static final String TOO_LARGE = "Amount too large";
+    static final String TOO_LONG = "Name or contact too long";
+    static final String SAME_ACCOUNT = "Cannot transfer to the same account";
+    
+    final BankApp app;
+    final AccountStore accounts;
+    final BankJournal journal;
+    final int workers;
+    final ExecutorService pool;
+    
+    final String[] lines = new String[BLOCK];
+    final byte[] kind = new byte[BLOCK];
+    final int[] accNo = new int[BLOCK];
+    final long[] paise = new long[BLOCK];
+    final long[] balance = new long[BLOCK];
+    final String[] error = new String[BLOCK]; // null when the line succeeded
+    int n = 0;
+    long lineNo = 0;
+    long ok = 0;
+    long failed = 0;
+    final StringBuilder results = new StringBuilder(); // written only once a commit covers them
+    
+    BatchRunner(BankApp app, int workers) {
+        this.app = app;
+        this.accounts = app.accounts;
+        this.journal = app.journal;
+        this.workers = Math.max(1, workers);
+        this.pool = Executors.newFixedThreadPool(this.workers);
+    }
+    
+    void run(Path in, Path out) throws IOException, InterruptedException {
+        try (BufferedReader reader = Files.newBufferedReader(in);
+             BufferedWriter writer = Files.newBufferedWriter(out)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("C,")) {
+                    // account numbers are handed out in file order, so creation is never parallel
+                    flush(writer);
+                    create(line, writer);
+                } else {
+                    lines[n++] = line;
+                    if (n == BLOCK) {
+                        flush(writer);
+                    }
+                }
+            }
+            flush(writer);
+            publish(writer);
+        } finally {
+            pool.shutdown();
+        }
+    }
+    
+    void create(String line, BufferedWriter writer) throws IOException {
+        String[] parts = line.split(",", -1);
+        long start = parts.length == 5 ? parsePaise(parts[2], 0, parts[2].length()) : -1;
+        lineNo++;
+        String error = parts.length != 5 ? BAD_LINE : start < 0 ? INVALID_AMOUNT
+                : !Account.fits(parts[1]) || !Account.fits(parts[3]) || !Account.fits(parts[4]) ? TOO_LONG : null;
+        int no = error == null ? nextNumber() : -1;
+        if (error == null && no < 0) {
+            error = NO_NUMBERS;
+        }
+        if (error != null) {
+            failed++;
+            results.append(lineNo).append(",ERR,").append(error).append('\n');
+        } else {
+            app.snapshotLock.readLock().lock();
+            try {
+                Account acc = new Account(no, parts[1], start, parts[3], parts[4]);
+                journal.create(acc);
+                accounts.add(acc);
+                app.contacts.add(acc);
+                results.append(lineNo).append(",OK,").append(acc.getAccNo()).append('\n');
+            } finally {
+                app.snapshotLock.readLock().unlock();
+            }
+            ok++;
+        }
+        if (results.length() >= 1 << 20) {
+            publish(writer);
+        }
+    }
+    
+    // Commit everything applied so far, then write the results that were waiting for it
+    void publish(BufferedWriter writer) throws IOException {
+        if (journal.durable < journal.lastAppended()) {
+            journal.commit(journal.lastAppended(), System.nanoTime());
+        }
+        writer.append(results);
+        results.setLength(0);
+    }
+    
+    void flush(BufferedWriter writer) throws IOException, InterruptedException {
+        if (n == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        int slice = (n + workers - 1) / workers;
+        for (int from = 0; from < n; from += slice) {
+            int lo = from;
+            int hi = Math.min(n, from + slice);
+            tasks.add(() -> {
+                for (int i = lo; i < hi; i++) {
+                    parse(i);
+                }
+                return null;
+            });
+        }
+        runAll(tasks);
+        
+        tasks.clear();
+        for (int w = 0; w < workers; w++) {
+            int owner = w;
+            tasks.add(() -> {
+                apply(owner);
+                return null;
+            });
+        }
+        app.snapshotLock.readLock().lock();
+        try {
+            runAll(tasks);
+        } finally {
+            app.snapshotLock.readLock().unlock();
+        }
+        // one group commit for the whole block, before any of its results are reported
+        journal.commit(journal.lastAppended(), start);
+        app.maybeSnapshot();
+        
+        StringBuilder sb = results; // after any creates still waiting for this commit
+        for (int i = 0; i < n; i++) {
+            sb.append(++lineNo).append(',');
+            if (error[i] == null) {
+                ok++;
+                sb.append("OK,");
+                Account.appendRupees(sb, balance[i]);
+            } else {
+                failed++;
+                sb.append("ERR,").append(error[i]);
+            }
+            sb.append('\n');
+            lines[i] = null;
+        }
+        writer.append(sb);
+        sb.setLength(0);
+        n = 0;
+    }
+    
+    void runAll(List<Callable<Void>> tasks) throws InterruptedException {
+        for (Future<Void> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch worker failed", e.getCause());
+            }
+        }
+    }
+    
+    void parse(int i) {
+        String s = lines[i];
+        kind[i] = BAD;
+        error[i] = BAD_LINE;
+        if (s.length() < 5 || s.charAt(1) != ',') {
+            return;
+        }
+        char c = s.charAt(0);
+        byte k = c == 'D' || c == 'd' ? DEPOSIT : c == 'W' || c == 'w' ? WITHDRAW : BAD;
+        int comma = s.indexOf(',', 2);
+        if (k == BAD || comma < 0) {
+            return;
+        }
+        int no = 0;
+        for (int j = 2; j < comma; j++) {
+            int d = s.charAt(j) - '0';
+            if (d < 0 || d > 9 || no > (Integer.MAX_VALUE - d) / 10) {
+                return;
+            }
+            no = no * 10 + d;
+        }
+        if (comma == 2) {
+            return;
+        }
+        long amount = parsePaise(s, comma + 1, s.length());
+        if (amount <= 0) {
+            BankMetrics.invalidAmount();
+            error[i] = INVALID_AMOUNT;
+            return;
+        }
+        kind[i] = k;
+        accNo[i] = no;
+        paise[i] = amount;
+        error[i] = null;
+    }
+    
+    // Same checks and messages as Account.deposit and Account.withdraw
+    void apply(int owner) {
+        for (int i = 0; i < n; i++) {
+            if (kind[i] == BAD || accNo[i] % workers != owner) {
+                continue;
+            }
+            Account acc = app.findAccount(accNo[i]);
+            if (acc == null) {
+                error[i] = NOT_FOUND;
+            } else if (kind[i] == DEPOSIT) {
+                synchronized (acc) {
+                    long now = acc.credit(paise[i]);
+                    if (now < 0) {
+                        error[i] = TOO_LARGE;
+                    } else {
+                        balance[i] = now;
+                        journal.deposit(accNo[i], paise[i]);
+                    }
+                }
+            } else {
+                synchronized (acc) {
+                    long now = acc.debit(paise[i]);
+                    if (now < 0) {
+                        error[i] = NOT_ENOUGH;
+                    } else {
+                        balance[i] = now;
+                        journal.withdraw(accNo[i], paise[i]);
+                    }
+                }
+            }
+        }
+    }
+    
+    // A new account number, or -1 (after saying why) if none can be leased
+    static int nextNumber() {
+        try {
+            return Account.NUMBERS.next();
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage() + ": " + e.getCause().getMessage());
+            return -1;
+        }
+    }
+    
+    // A plain amount like "250" or "250.5" straight to paise without building a double;
+    // anything else (more decimals, exponents) goes through Account.toPaise. -1 if not a number.
+    static long parsePaise(String s, int from, int to) {
+        while (from < to && s.charAt(from) == ' ') {
+            from++;
+        }
+        while (to > from && s.charAt(to - 1) == ' ') {
+            to--;
+        }
+        long whole = 0;
+        int i = from;
+        while (i < to && i - from < 13 && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+            whole = whole * 10 + (s.charAt(i++) - '0');
+        }
+        if (i > from) {
+            if (i == to) {
+                return whole * 100;
+            }
+            if (s.charAt(i) == '.' && to - i <= 3) {
+                long fraction = 0;
+                int digits = 0;
+                for (int j = i + 1; j < to; j++, digits++) {
+                    int d = s.charAt(j) - '0';
+                    if (d < 0 || d > 9) {
+                        return -1;
+                    }
+                    fraction = fraction * 10 + d;
+                }
+                return whole * 100 + (digits == 1 ? fraction * 10 : fraction);
+            }
+        }
+        try {
+            double amt = Double.parseDouble(s.substring(from, to));
+            return Account.toPaise(amt);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+    
+    String summary(long ms) {
+        long total = ok + failed;
+        return "Processed " + total + " lines (" + ok + " ok, " + failed + " failed) in " + ms + " ms"
+                + (ms > 0 ? " (" + total * 1000 / ms + " lines/s)" : "");
+    }
+}
+
+// Accounts by normalized email (trimmed, lower case) and phone (digits only). Several
+// accounts may share a contact, so each key maps to an array of account numbers.
+// A change adds the new keys before the account's fields change and removes the old ones
+// after, and a lookup checks each account's current contact, so a lookup running
+// alongside a change never misses the account and never returns a stale match.
+class ContactIndex {
+    final ConcurrentHashMap<String, int[]> byEmail;
+    final ConcurrentHashMap<String, int[]> byPhone;
+    
+    ContactIndex(int expected) {
+        byEmail = new ConcurrentHashMap<>(Math.max(16, expected));
+        byPhone = new ConcurrentHashMap<>(Math.max(16, expected));
+    }
+    
+    static String email(String e) {
+        return e == null ? "" : e.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    static String phone(String p) {
+        if (p == null) {
+            return "";
+        }
+        int i = 0;
+        while (i < p.length() && p.charAt(i) >= '0' && p.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == p.length()) {
+            return p; // already just digits
+        }
+        StringBuilder digits = new StringBuilder(p.length());
+        digits.append(p, 0, i);
+        for (; i < p.length(); i++) {
+            char c = p.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+    
+    void add(Account acc) {
+        put(byEmail, email(acc.email), acc.accNo);
+        put(byPhone, phone(acc.phone), acc.accNo);
+    }
+    
+    void update(Account acc, String email, String phone) {
+        synchronized (acc) {
+            String oldEmail = email(acc.email);
+            String oldPhone = phone(acc.phone);
+            String newEmail = email(email);
+            String newPhone = phone(phone);
+            put(byEmail, newEmail, acc.accNo);
+            put(byPhone, newPhone, acc.accNo);
+            acc.setContact(email, phone);
+            if (!oldEmail.equals(newEmail)) {
+                remove(byEmail, oldEmail, acc.accNo);
+            }
+            if (!oldPhone.equals(newPhone)) {
+                remove(byPhone, oldPhone, acc.accNo);
+            }
+        }
+    }
+    
+    List<Account> findByEmail(String email, AccountStore accounts) {
+        String key = email(email);
+        return find(byEmail.get(key), accounts, acc -> key.equals(email(acc.email)));
+    }
+    
+    List<Account> findByPhone(String phone, AccountStore accounts) {
+        String key = phone(phone);
+        return find(byPhone.get(key), accounts, acc -> key.equals(phone(acc.phone)));
+    }
+    
+    static List<Account> find(int[] numbers, AccountStore accounts, Predicate<Account> current) {
+        List<Account> found = new ArrayList<>();
+        for (int i = 0; numbers != null && i < numbers.length; i++) {
+            Account acc = accounts.get(numbers[i]);
+            if (acc != null && current.test(acc)) {
+                found.add(acc);
+            }
+        }
+        return found;
+    }
+    
+    static void put(ConcurrentHashMap<String, int[]> index, String key, int no) {
+        if (key.isEmpty() || index.putIfAbsent(key, new int[] {no}) == null) {
+            return;
+        }
+        index.compute(key, (k, numbers) -> {
+            if (numbers == null) {
+                return new int[] {no};
+            }
+            for (int n : numbers) {
+                if (n == no) {
+                    return numbers;
+                }
+            }
+            int[] more = Arrays.copyOf(numbers, numbers.length + 1);
+            more[numbers.length] = no;
+            return more;
+        });
+    }
+    
+    static void remove(ConcurrentHashMap<String, int[]> index, String key, int no) {
+        if (key.isEmpty()) {
+            return;
+        }
+        index.computeIfPresent(key, (k, numbers) -> {
+            int[] rest = new int[numbers.length];
+            int n = 0;
+            for (int x : numbers) {
+                if (x != no) {
+                    rest[n++] = x;
+                }
+            }
+            return n == 0 ? null : Arrays.copyOf(rest, n);
+        });
+    }
+}
+
+// End-of-day run: a list of rules applied to every account in parallel on the common
+// fork-join pool, one task per run of AccountStore pages. Nothing is printed per account;
+// the run adds up a report instead. Rules come from a text file, one per line, and each
+// rule sees the balance left by the rules above it:
+//   interest <yearly percent> [minimum balance]   daily interest, e.g. "interest 3.5 1000"
+//   fee <amount> below <balance>                  e.g. "fee 25 below 500"
+// A fee never takes a balance below zero. Every interest or fee posting is also a row on
+// the account's statement, so statements still add up to the balance after the run.
+class EndOfDay {
+    interface Rule {
+        String name();
+        
+        // Paise to add to the balance (negative to take), given the balance so far
+        long apply(long balance);
+    }
+    
+    static final class Interest implements Rule {
+        static final long DIVISOR = 10_000L * 365; // basis points, per day
+        final long basisPoints;
+        final long minimum;
+        
+        Interest(long basisPoints, long minimum) {
+            this.basisPoints = basisPoints;
+            this.minimum = minimum;
+        }
+        
+        public String name() {
+            return "interest " + BigDecimal.valueOf(basisPoints, 2).stripTrailingZeros().toPlainString() + "%"
+                    + (minimum > 0 ? " from " + Account.rupees(minimum) : "");
+        }
+        
+        public long apply(long balance) {
+            if (balance < minimum || balance <= 0) {
+                return 0;
+            }
+            if (balance < Long.MAX_VALUE / Math.max(1, basisPoints)) {
+                return (balance * basisPoints + DIVISOR / 2) / DIVISOR;
+            }
+            return BigDecimal.valueOf(balance).multiply(BigDecimal.valueOf(basisPoints))
+                    .divide(BigDecimal.valueOf(DIVISOR), 0, RoundingMode.HALF_UP).longValue();
+        }
+    }
+    
+    static final class Fee implements Rule {
+        final long fee;
+        final long below;
+        
+        Fee(long fee, long below) {
+            this.fee = fee;
+            this.below = below;
+        }
+        
+        public String name() {
+            return "fee " + Account.rupees(fee) + " below " + Account.rupees(below);
+        }
+        
+        public long apply(long balance) {
+            return balance < below ? -Math.min(fee, Math.max(0, balance)) : 0;
+        }
+    }
+    
+    static List<Rule> defaultRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(new Interest(350, 0));
+        rules.add(new Fee(2500, 50000));
+        return rules;
+    }
+    
+    // Rules from the file, or the default rules if there is no file
+    static List<Rule> loadRules(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return defaultRules();
+        }
+        List<Rule> rules = new ArrayList<>();
+        List<String> lines = Files.readAllLines(path);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] f = line.split("\\s+");
+            Rule rule = null;
+            if (f[0].equalsIgnoreCase("interest") && (f.length == 2 || f.length == 3)) {
+                long bps = BatchRunner.parsePaise(f[1], 0, f[1].length()); // percent with 2 decimals = basis points
+                long minimum = f.length == 3 ? BatchRunner.parsePaise(f[2], 0, f[2].length()) : 0;
+                if (bps >= 0 && minimum >= 0) {
+                    rule = new Interest(bps, minimum);
+                }
+            } else if (f[0].equalsIgnoreCase("fee") && f.length == 4 && f[2].equalsIgnoreCase("below")) {
+                long fee = BatchRunner.parsePaise(f[1], 0, f[1].length());
+                long below = BatchRunner.parsePaise(f[3], 0, f[3].length());
+                if (fee >= 0 && below >= 0) {
+                    rule = new Fee(fee, below);
+                }
+            }
+            if (rule == null) {
+                System.out.println("Skipping bad rule on line " + (i + 1) + ": " + line);
+            } else {
+                rules.add(rule);
+            }
+        }
+        if (rules.size() > MAX_RULES) {
+            throw new IOException("more than " + MAX_RULES + " rules in " + path);
+        }
+        return rules;
+    }
+    
+    static final class Tally {
+        long accounts;
+        long liabilities;
+        final long[] hits;
+        final long[] amounts;
+        
+        Tally(int rules) {
+            hits = new long[rules];
+            amounts = new long[rules];
+        }
+        
+        Tally add(Tally other) {
+            accounts += other.accounts;
+            liabilities += other.liabilities;
+            for (int i = 0; i < hits.length; i++) {
+                hits[i] += other.hits[i];
+                amounts[i] += other.amounts[i];
+            }
+            return this;
+        }
+    }
+    
+    static final int MAX_RULES = Byte.MAX_VALUE; // postings per account are counted in a byte
+    
+    final Rule[] rules;
+    final AccountStore accounts;
+    // One posting time for the whole run
+    final long time = System.currentTimeMillis();
+    // Postings made to each account by the last run, by store page, so they can be
+    // journaled if the snapshot that should have saved them fails
+    byte[][] posted;
+    
+    EndOfDay(List<Rule> rules, AccountStore accounts) {
+        this.rules = rules.toArray(new Rule[0]);
+        this.accounts = accounts;
+    }
+    
+    // Changes must be paused while this runs
+    Tally run() {
+        posted = new byte[accounts.pageCount()][];
+        return ForkJoinPool.commonPool().invoke(new Pages(0, posted.length));
+    }
+    
+    // Appends the last run's postings to the journal as deposits and withdrawals carrying
+    // the posting time, so replay rebuilds the same balances and statement rows. Changes
+    // must still be paused.
+    void journal(BankJournal journal) {
+        for (int p = 0; p < posted.length; p++) {
+            Account[] page = accounts.page(p);
+            byte[] counts = posted[p];
+            for (int i = 0; counts != null && i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    Account acc = page[i];
+                    History h = acc.history();
+                    h.forEachSince(h.size() - counts[i], (t, amount, balance) -> journal.posting(acc.accNo, amount, t));
+                }
+            }
+        }
+    }
+    
+    final class Pages extends RecursiveTask<Tally> {
+        private static final long serialVersionUID = 1L;
+        final int from;
+        final int to;
+        
+        Pages(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected Tally compute() {
+            if (to - from > 4) {
+                int mid = (from + to) >>> 1;
+                Pages left = new Pages(from, mid);
+                left.fork();
+                Tally right = new Pages(mid, to).compute();
+                return right.add(left.join());
+            }
+            Tally t = new Tally(rules.length);
+            for (int p = from; p < to; p++) {
+                Account[] page = accounts.page(p);
+                if (page == null) {
+                    continue;
+                }
+                byte[] counts = posted[p] = new byte[page.length];
+                for (int i = 0; i < page.length; i++) {
+                    Account acc = page[i];
+                    if (acc != null) {
+                        counts[i] = (byte) settle(acc, t);
+                    }
+                }
+            }
+            return t;
+        }
+    }
+    
+    // Returns the number of postings made
+    int settle(Account acc, Tally t) {
+        long balance;
+        int postings = 0;
+        synchronized (acc) {
+            long opening = acc.balance;
+            balance = opening;
+            for (int r = 0; r < rules.length; r++) {
+                long change = rules[r].apply(balance);
+                if (change != 0 && (change < 0 || balance <= Long.MAX_VALUE - change)) {
+                    balance += change;
+                    t.hits[r]++;
+                    t.amounts[r] += change;
+                    acc.history().add(time, change, balance);
+                    postings++;
+                }
+            }
+            if (balance != opening) {
+                acc.balance = balance;
+            }
+        }
+        t.accounts++;
+        t.liabilities += balance;
+        return postings;
+    }
+    
+    String report(Tally t, long ms) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("End of day: ").append(t.accounts).append(" accounts in ").append(ms).append(" ms\n");
+        sb.append("Total liabilities: ").append(Account.rupees(t.liabilities)).append('\n');
+        sb.append("Rule hits:\n");
+        long most = 1;
+        for (long h : t.hits) {
+            most = Math.max(most, h);
+        }
+        for (int r = 0; r < rules.length; r++) {
+            sb.append(String.format("  %-32s %10d  %18s  ", rules[r].name(), t.hits[r], Account.rupees(t.amounts[r])));
+            sb.append("#".repeat((int) (40 * t.hits[r] / most))).append('\n');
+        }
+        return sb.toString();
+    }
+}
+
+// Non-interactive front end: one command per line, one reply line per command.
+//   NEW <money> <email> <phone> <name...>   -> OK <accNo>
+//   DEP <accNo> <amount>                    -> OK <balance>
+//   WDR <accNo> <amount>                    -> OK <balance>
+//   XFR <from> <to> <amount>                -> OK <balance of from>
+//   BAL <accNo>                             -> OK <balance>
+//   SHOW <accNo>                            -> OK <accNo> <balance> <email> <phone> <name>
+//   UPD <accNo> <email> <phone>             -> OK
+//   FIND <email or phone>                   -> OK <accNo>...
+//   QUIT
+// Failures reply "ERR <reason>" with the reasons the menu prints. Lines are parsed straight
+// from the input bytes and replies collect in one buffer. The journal is committed once
+// each time that buffer is written out, so a reply is never seen before its change is on
+// disk and a long piped script pays for one fsync per buffer, not per command.
+class CommandProtocol {
+    static final int NEW = word("NEW");
+    static final int DEP = word("DEP");
+    static final int WDR = word("WDR");
+    static final int XFR = word("XFR");
+    static final int BAL = word("BAL");
+    static final int SHOW = word("SHOW");
+    static final int UPD = word("UPD");
+    static final int FIND = word("FIND");
+    static final int QUIT = word("QUIT");
+    static final int MAX_TOKENS = 5;
+    
+    final BankApp app;
+    final InputStream in;
+    final OutputStream out;
+    final byte[] input = new byte[1 << 16];
+    int inPos = 0;
+    int inEnd = 0;
+    byte[] line = new byte[256];
+    int lineLength = 0;
+    final int[] tokenStart = new int[MAX_TOKENS];
+    final int[] tokenEnd = new int[MAX_TOKENS];
+    int tokens = 0;
+    final byte[] output = new byte[1 << 16];
+    int outPos = 0;
+    long lastSeq = 0; // newest journal record behind a reply still in the buffer
+    long commands = 0;
+    
+    CommandProtocol(BankApp app, InputStream in, OutputStream out) {
+        this.app = app;
+        this.in = in;
+        this.out = out;
+    }
+    
+    // Up to four upper-case letters packed into an int, to switch on a command without a String
+    static int word(String s) {
+        int w = 0;
+        for (int i = 0; i < s.length(); i++) {
+            w = (w << 8) | s.charAt(i);
+        }
+        return w;
+    }
+    
+    void run() throws IOException {
+        while (readLine()) {
+            if (tokenize() == 0) {
+                continue;
+            }
+            commands++;
+            if (command() == QUIT) {
+                break;
+            }
+            if (output.length - outPos < 1024) {
+                flush();
+            }
+        }
+        flush();
+    }
+    
+    int command() {
+        int cmd = 0;
+        int len = tokenEnd[0] - tokenStart[0];
+        for (int i = 0; i < len && len <= 4; i++) {
+            int c = line[tokenStart[0] + i];
+            cmd = (cmd << 8) | (c >= 'a' && c <= 'z' ? c - 32 : c);
+        }
+        if (len > 4) {
+            cmd = 0;
+        }
+        if (cmd == DEP || cmd == WDR) {
+            money(cmd);
+        } else if (cmd == XFR) {
+            transfer();
+        } else if (cmd == BAL || cmd == SHOW) {
+            show(cmd);
+        } else if (cmd == NEW) {
+            create();
+        } else if (cmd == UPD) {
+            update();
+        } else if (cmd == FIND) {
+            find();
+        } else if (cmd != QUIT) {
+            error("Unknown command");
+        }
+        return cmd;
+    }
+    
+    void money(int cmd) {
+        int no = tokens == 3 ? number(1) : -1;
+        if (no < 0) {
+            error(BatchRunner.BAD_LINE);
+            return;
+        }
+        long paise = paise(2);
+        if (paise <= 0) {
+            BankMetrics.invalidAmount();
+            error(BatchRunner.INVALID_AMOUNT);
+            return;
+        }
+        Account acc = app.findAccount(no);
+        if (acc == null) {
+            error(BatchRunner.NOT_FOUND);
+            return;
+        }
+        long now;
+        app.snapshotLock.readLock().lock();
+        try {
+            synchronized (acc) {
+                now = cmd == DEP ? acc.credit(paise) : acc.debit(paise);
+                if (now >= 0) {
+                    lastSeq = cmd == DEP ? app.journal.deposit(no, paise) : app.journal.withdraw(no, paise);
+                }
+            }
+        } finally {
+            app.snapshotLock.readLock().unlock();
+        }
+        if (now < 0) {
+            error(cmd == DEP ? BatchRunner.TOO_LARGE : BatchRunner.NOT_ENOUGH);
         } else {
-            System.out.println("Invalid amount");
+            ok().rupees(now).newline();
         }
     }
     
-    void withdraw(double amt) {
-        if (amt <= 0) {
-            System.out.println("Invalid amount");
-        } else if (amt > balance) {
-            System.out.println("Not enough money. Balance: " + balance);
+    void transfer() {
+        int from = tokens == 4 ? number(1) : -1;
+        int to = tokens == 4 ? number(2) : -1;
+        if (from < 0 || to < 0) {
+            error(BatchRunner.BAD_LINE);
+            return;
+        }
+        if (from == to) {
+            error(BatchRunner.SAME_ACCOUNT);
+            return;
+        }
+        long paise = paise(3);
+        if (paise <= 0) {
+            BankMetrics.invalidAmount();
+            error(BatchRunner.INVALID_AMOUNT);
+            return;
+        }
+        Account a = app.findAccount(from);
+        Account b = app.findAccount(to);
+        if (a == null || b == null) {
+            error(BatchRunner.NOT_FOUND);
+            return;
+        }
+        long seq;
+        app.snapshotLock.readLock().lock();
+        try {
+            seq = Account.transfer(a, b, paise, () -> app.journal.transfer(from, to, paise));
+        } finally {
+            app.snapshotLock.readLock().unlock();
+        }
+        if (seq > 0) {
+            lastSeq = seq;
+            ok().rupees(a.balance).newline();
         } else {
-            balance = balance - amt;
-            System.out.println("Money taken. Balance: " + balance);
+            error(seq == Account.OVERFLOW ? BatchRunner.TOO_LARGE : BatchRunner.NOT_ENOUGH);
         }
     }
     
-    void show() {
-        System.out.println("Account Number: " + accNo);
-        System.out.println("Name: " + name);
-        System.out.println("Balance: " + balance);
-        System.out.println("Email: " + email);
-        System.out.println("Phone: " + phone);
+    void show(int cmd) {
+        int no = tokens == 2 ? number(1) : -1;
+        Account acc = no < 0 ? null : app.findAccount(no);
+        if (no < 0) {
+            error(BatchRunner.BAD_LINE);
+        } else if (acc == null) {
+            error(BatchRunner.NOT_FOUND);
+        } else if (cmd == BAL) {
+            ok().rupees(acc.balance).newline();
+        } else {
+            ok().digits(acc.accNo).space().rupees(acc.balance).space().text(acc.email).space()
+                    .text(acc.phone).space().text(acc.name).newline();
+        }
     }
     
-    void updateContact(String e, String p) {
-        email = e;
-        phone = p;
-        System.out.println("Contact updated");
+    void create() {
+        long paise = tokens == 5 ? paise(1) : -1;
+        if (paise < 0) {
+            error(tokens == 5 ? BatchRunner.INVALID_AMOUNT : BatchRunner.BAD_LINE);
+            return;
+        }
+        String email = string(2);
+        String phone = string(3);
+        String name = new String(line, tokenStart[4], lineLength - tokenStart[4], StandardCharsets.UTF_8).trim();
+        if (!Account.fits(name) || !Account.fits(email) || !Account.fits(phone)) {
+            error(BatchRunner.TOO_LONG);
+            return;
+        }
+        int no = BatchRunner.nextNumber();
+        if (no < 0) {
+            error(BatchRunner.NO_NUMBERS);
+            return;
+        }
+        app.snapshotLock.readLock().lock();
+        try {
+            Account acc = new Account(no, name, paise, email, phone);
+            lastSeq = app.journal.create(acc);
+            app.accounts.add(acc);
+            app.contacts.add(acc);
+            ok().digits(acc.accNo).newline();
+        } finally {
+            app.snapshotLock.readLock().unlock();
+        }
     }
     
-    int getAccNo() {
-        return accNo;
+    void update() {
+        int no = tokens == 4 ? number(1) : -1;
+        if (no < 0) {
+            error(BatchRunner.BAD_LINE);
+            return;
+        }
+        Account acc = app.findAccount(no);
+        if (acc == null) {
+            error(BatchRunner.NOT_FOUND);
+            return;
+        }
+        String email = string(2);
+        String phone = string(3);
+        if (!Account.fits(email) || !Account.fits(phone)) {
+            error(BatchRunner.TOO_LONG);
+            return;
+        }
+        app.snapshotLock.readLock().lock();
+        try {
+            app.contacts.update(acc, email, phone);
+            lastSeq = app.journal.contact(no, email, phone);
+        } finally {
+            app.snapshotLock.readLock().unlock();
+        }
+        ascii("OK").newline();
+    }
+    
+    void find() {
+        if (tokens != 2) {
+            error(BatchRunner.BAD_LINE);
+            return;
+        }
+        String contact = string(1);
+        List<Account> found = contact.indexOf('@') >= 0
+                ? app.contacts.findByEmail(contact, app.accounts)
+                : app.contacts.findByPhone(contact, app.accounts);
+        if (found.isEmpty()) {
+            error(BatchRunner.NOT_FOUND);
+            return;
+        }
+        ok();
+        for (int i = 0; i < found.size(); i++) {
+            if (i > 0) {
+                space();
+            }
+            digits(found.get(i).accNo);
+        }
+        newline();
+    }
+    
+    // ---- input ----
+    
+    // Next line into line[], without the line break; false at end of input
+    boolean readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            if (inPos == inEnd) {
+                if (in.available() == 0) {
+                    flush(); // about to wait for input: send what is ready first
+                }
+                inEnd = in.read(input, 0, input.length);
+                inPos = 0;
+                if (inEnd <= 0) {
+                    inEnd = 0;
+                    return lineLength > 0;
+                }
+            }
+            byte b = input[inPos++];
+            if (b == '\n') {
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, line.length * 2);
+            }
+            line[lineLength++] = b;
+        }
+    }
+    
+    // Splits on spaces; the fifth token runs to the end of the line (a NEW name may have spaces)
+    int tokenize() {
+        tokens = 0;
+        int i = 0;
+        while (i < lineLength && tokens < MAX_TOKENS) {
+            while (i < lineLength && (line[i] == ' ' || line[i] == '\t')) {
+                i++;
+            }
+            if (i == lineLength) {
+                break;
+            }
+            tokenStart[tokens] = i;
+            while (i < lineLength && line[i] != ' ' && line[i] != '\t') {
+                i++;
+            }
+            tokenEnd[tokens++] = i;
+        }
+        if (tokens == MAX_TOKENS && i < lineLength) {
+            tokenEnd[MAX_TOKENS - 1] = lineLength;
+        }
+        return tokens;
+    }
+    
+    // A non-negative int token, or -1
+    int number(int t) {
+        long n = 0;
+        if (tokenStart[t] == tokenEnd[t] || tokenEnd[t] - tokenStart[t] > 10) {
+            return -1;
+        }
+        for (int i = tokenStart[t]; i < tokenEnd[t]; i++) {
+            int d = line[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            n = n * 10 + d;
+        }
+        return n > Integer.MAX_VALUE ? -1 : (int) n;
+    }
+    
+    // An amount in paise: "250", "250.5" and "250.50" directly from the bytes, other ASCII
+    // through BatchRunner.parsePaise; -1 if it is not a non-negative amount. Digits from
+    // other scripts (any byte over 0x7F) are refused outright rather than parsed.
+    long paise(int t) {
+        int from = tokenStart[t];
+        int to = tokenEnd[t];
+        long whole = 0;
+        int i = from;
+        while (i < to && i - from < 13 && line[i] >= '0' && line[i] <= '9') {
+            whole = whole * 10 + (line[i++] - '0');
+        }
+        if (i > from && i == to) {
+            return whole * 100;
+        }
+        if (i > from && line[i] == '.' && to - i >= 2 && to - i <= 3) {
+            int d1 = line[i + 1] - '0';
+            int d2 = to - i == 3 ? line[i + 2] - '0' : 0;
+            if (d1 >= 0 && d1 <= 9 && d2 >= 0 && d2 <= 9) {
+                return whole * 100 + d1 * 10 + d2;
+            }
+        }
+        for (int j = from; j < to; j++) {
+            if (line[j] < 0) {
+                return -1;
+            }
+        }
+        String s = new String(line, from, to - from, StandardCharsets.US_ASCII);
+        return BatchRunner.parsePaise(s, 0, s.length());
+    }
+    
+    String string(int t) {
+        return new String(line, tokenStart[t], tokenEnd[t] - tokenStart[t], StandardCharsets.UTF_8);
+    }
+    
+    // ---- output ----
+    
+    CommandProtocol ok() {
+        return ascii("OK ");
+    }
+    
+    void error(String reason) {
+        ascii("ERR ").ascii(reason).newline();
+    }
+    
+    CommandProtocol ascii(String s) {
+        room(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            output[outPos++] = (byte) s.charAt(i);
+        }
+        return this;
+    }
+    
+    CommandProtocol text(String s) {
+        byte[] b = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        room(b.length);
+        System.arraycopy(b, 0, output, outPos, b.length);
+        outPos += b.length;
+        return this;
+    }
+    
+    CommandProtocol digits(long n) {
+        room(20);
+        if (n < 0) {
+            output[outPos++] = '-';
+            n = -n;
+        }
+        int start = outPos;
+        do {
+            output[outPos++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+        for (int i = start, j = outPos - 1; i < j; i++, j--) {
+            byte b = output[i];
+            output[i] = output[j];
+            output[j] = b;
+        }
+        return this;
+    }
+    
+    CommandProtocol rupees(long paise) {
+        if (paise < 0) {
+            ascii("-");
+            paise = -paise;
+        }
+        digits(paise / 100);
+        room(3);
+        output[outPos++] = '.';
+        output[outPos++] = (byte) ('0' + paise % 100 / 10);
+        output[outPos++] = (byte) ('0' + paise % 10);
+        return this;
+    }
+    
+    CommandProtocol space() {
+        room(1);
+        output[outPos++] = ' ';
+        return this;
+    }
+    
+    CommandProtocol newline() {
+        room(1);
+        output[outPos++] = '\n';
+        return this;
+    }
+    
+    void room(int bytes) {
+        if (output.length - outPos < bytes) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (bytes > output.length) {
+                throw new IllegalArgumentException("Reply too long");
+            }
+        }
+    }
+    
+    // Commit the journal up to the newest reply, then send the replies
+    void flush() throws IOException {
+        if (lastSeq > 0) {
+            app.journal.commit(lastSeq, System.nanoTime());
+            lastSeq = 0;
+            app.maybeSnapshot();
+        }
+        if (outPos > 0) {
+            out.write(output, 0, outPos);
+            outPos = 0;
+        }
+        out.flush();
     }
 }
 
 class BankApp {
-    Account[] accounts = new Account[100];
-    int count = 0;
+    static final Path JOURNAL_FILE = Paths.get("bank.journal");
+    static final Path SNAPSHOT_FILE = Paths.get("bank.snap");
+    static final Path HISTORY_FILE = Paths.get("bank.history");
+    // -Dbank.fsync=false skips fsync (faster, but a power cut can lose committed changes)
+    static final boolean FSYNC = !"false".equalsIgnoreCase(System.getProperty("bank.fsync"));
+    // How long a commit waits for other tellers before its fsync; 0 syncs straight away
+    static final long COMMIT_WINDOW_MICROS = Long.getLong("bank.commitWindowMicros", 0);
+    // Journal records after which the accounts are snapshotted and the journal emptied
+    static final long SNAPSHOT_EVERY = Long.getLong("bank.snapshotEvery", 100_000);
+    static final Path RULES_FILE = Paths.get(System.getProperty("bank.eodRules", "eod-rules.txt"));
+    
+    AccountStore accounts = new AccountStore(Account.NUMBERS.first);
     Scanner sc = new Scanner(System.in);
+    BankJournal journal;
+    ContactIndex contacts = new ContactIndex(0);
+    HistoryArchive history = new HistoryArchive(HISTORY_FILE);
+    PrintStream console = System.out; // where recovery and shutdown figures go
+    // Changes hold the read side; a snapshot holds the write side so it sees no half-done change
+    final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
     
-    void createAccount() {
-        if (count >= 100) {
-            System.out.println("Cannot create more accounts");
+    // Loads the last snapshot, replays the journal after it and opens the journal for new changes
+    void open() throws IOException {
+        long t0 = System.nanoTime();
+        BankSnapshot.Loaded snap = BankSnapshot.read(SNAPSHOT_FILE, accounts);
+        history.load(snap.historyLength, accounts);
+        BankJournal.Replay replay = BankJournal.replay(JOURNAL_FILE, accounts, snap.epoch);
+        journal = new BankJournal(JOURNAL_FILE, replay, FSYNC, COMMIT_WINDOW_MICROS * 1000);
+        contacts = new ContactIndex(accounts.size());
+        accounts.forEach(contacts::add);
+        BankMetrics.start(journal.commitLatency);
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        if (snap.accounts >= 0 || replay.records > 0) {
+            console.println("Recovered " + accounts.size() + " accounts (" + Math.max(0, snap.accounts)
+                    + " from snapshot, " + replay.records + " journal records) in " + ms + " ms");
+        }
+        if (replay.tornBytes > 0) {
+            console.println("Dropped " + replay.tornBytes + " bytes of incomplete journal records");
+        }
+    }
+    
+    // Returned by durably when the change was made but could not be saved
+    static final long NOT_SAVED = -1;
+    
+    // Makes one change with snapshots held off. The change returns its journal record number,
+    // or 0 if nothing changed; this then waits until that record is on disk. Returns that
+    // number, 0, or NOT_SAVED after saying why. An unsaved record stays queued and is written
+    // by the next commit that succeeds.
+    long durably(LongSupplier change) {
+        long start = System.nanoTime();
+        long seq;
+        snapshotLock.readLock().lock();
+        try {
+            seq = change.getAsLong();
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (seq > 0) {
+            try {
+                journal.commit(seq, start);
+            } catch (IOException e) {
+                System.out.println("Could not save change: " + e.getMessage());
+                return NOT_SAVED;
+            }
+            maybeSnapshot();
+        }
+        return seq;
+    }
+    
+    void maybeSnapshot() {
+        if (journal.records() >= SNAPSHOT_EVERY) {
+            snapshot();
+        }
+    }
+    
+    void snapshot() {
+        snapshotLock.writeLock().lock();
+        try {
+            if (journal.records() > 0) {
+                writeSnapshot();
+            }
+        } catch (IOException e) {
+            console.println("Could not save snapshot: " + e.getMessage());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+    
+    // Caller holds the write side of snapshotLock
+    void writeSnapshot() throws IOException {
+        journal.reset(saveState());
+    }
+    
+    // Writes the history archive and the snapshot, and returns the journal epoch the
+    // snapshot expects. Until the journal is reset to it, the journal still replays.
+    long saveState() throws IOException {
+        long next = journal.epoch() + 1;
+        long historyLength = history.append(accounts);
+        BankSnapshot.write(SNAPSHOT_FILE, accounts, next, historyLength);
+        history.saved(historyLength, accounts);
+        return next;
+    }
+    
+    // Interest and fees for every account. Tellers wait while it runs; the postings and their
+    // statement rows are not journaled one by one but made durable together by the snapshot
+    // taken before they resume. If that snapshot fails they are journaled instead, before
+    // any teller can add a record that depends on them.
+    void endOfDay() {
+        List<EndOfDay.Rule> rules;
+        try {
+            rules = EndOfDay.loadRules(RULES_FILE);
+        } catch (IOException e) {
+            System.out.println("Could not read rules: " + e.getMessage());
             return;
         }
-        
+        EndOfDay eod = new EndOfDay(rules, accounts);
+        EndOfDay.Tally tally;
+        long t0 = System.nanoTime();
+        snapshotLock.writeLock().lock();
+        try {
+            tally = eod.run();
+            long epoch = 0;
+            try {
+                epoch = saveState();
+            } catch (IOException e) {
+                System.out.println("Could not save end of day snapshot: " + e.getMessage());
+                eod.journal(journal);
+                journal.commit(journal.lastAppended(), System.nanoTime());
+                System.out.println("End of day postings saved in the journal instead");
+            }
+            if (epoch > 0) {
+                journal.reset(epoch);
+            }
+        } catch (IOException e) {
+            // postings not yet on disk stay queued ahead of every later change
+            System.out.println("Could not save end of day: " + e.getMessage());
+            return;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        System.out.print(eod.report(tally, (System.nanoTime() - t0) / 1_000_000));
+    }
+    
+    void close() throws IOException {
+        Account.NUMBERS.release();
+        snapshot();
+        journal.close();
+        console.println("Commit latency: " + journal.commitLatency.summary("commits"));
+        if (BankMetrics.ON) {
+            console.print(BankMetrics.report());
+        }
+    }
+    
+    void createAccount() {
         System.out.println("Create New Account");
         System.out.print("Enter name: ");
         String name = sc.nextLine();
@@ -82,15 +2600,39 @@ class BankApp {
         System.out.print("Enter phone: ");
         String phone = sc.nextLine();
         
-        Account acc = new Account(name, money, email, phone);
-        accounts[count] = acc;
-        count++;
+        if (!Account.fits(name) || !Account.fits(email) || !Account.fits(phone)) {
+            System.out.println(BatchRunner.TOO_LONG);
+            return;
+        }
+        long paise = Account.toPaise(money);
+        if (paise < 0) {
+            BankMetrics.invalidAmount();
+            System.out.println("Invalid amount");
+            return;
+        }
+        
+        int no = BatchRunner.nextNumber();
+        if (no < 0) {
+            System.out.println(BatchRunner.NO_NUMBERS);
+            return;
+        }
+        Account[] created = new Account[1];
+        if (durably(() -> {
+            created[0] = new Account(no, name, paise, email, phone);
+            long seq = journal.create(created[0]);
+            accounts.add(created[0]);
+            contacts.add(created[0]);
+            return seq;
+        }) == NOT_SAVED) {
+            return;
+        }
+        Account acc = created[0];
         
         System.out.println("Account created. Number: " + acc.getAccNo());
     }
     
     void depositMoney() {
-        if (count == 0) {
+        if (accounts.size() == 0) {
             System.out.println("No accounts");
             return;
         }
@@ -109,11 +2651,19 @@ class BankApp {
         double amt = sc.nextDouble();
         sc.nextLine();
         
-        acc.deposit(amt);
+        long[] now = new long[1];
+        if (durably(() -> {
+            synchronized (acc) {
+                now[0] = acc.deposit(amt);
+                return now[0] >= 0 ? journal.deposit(acc.accNo, Account.toPaise(amt)) : 0;
+            }
+        }) > 0) {
+            System.out.println("Money added. Balance: " + Account.rupees(now[0]));
+        }
     }
     
     void withdrawMoney() {
-        if (count == 0) {
+        if (accounts.size() == 0) {
             System.out.println("No accounts");
             return;
         }
@@ -132,11 +2682,19 @@ class BankApp {
         double amt = sc.nextDouble();
         sc.nextLine();
         
-        acc.withdraw(amt);
+        long[] now = new long[1];
+        if (durably(() -> {
+            synchronized (acc) {
+                now[0] = acc.withdraw(amt);
+                return now[0] >= 0 ? journal.withdraw(acc.accNo, Account.toPaise(amt)) : 0;
+            }
+        }) > 0) {
+            System.out.println("Money taken. Balance: " + Account.rupees(now[0]));
+        }
     }
     
     void showAccount() {
-        if (count == 0) {
+        if (accounts.size() == 0) {
             System.out.println("No accounts");
             return;
         }
@@ -155,7 +2713,7 @@ class BankApp {
     }
     
     void updateContacts() {
-        if (count == 0) {
+        if (accounts.size() == 0) {
             System.out.println("No accounts");
             return;
         }
@@ -176,16 +2734,144 @@ class BankApp {
         System.out.print("Enter new phone: ");
         String phone = sc.nextLine();
         
-        acc.updateContact(email, phone);
+        if (!Account.fits(email) || !Account.fits(phone)) {
+            System.out.println(BatchRunner.TOO_LONG);
+            return;
+        }
+        if (durably(() -> {
+            contacts.update(acc, email, phone);
+            return journal.contact(acc.accNo, email, phone);
+        }) != NOT_SAVED) {
+            System.out.println("Contact updated");
+        }
+    }
+    
+    void findByContact() {
+        System.out.print("Enter email or phone: ");
+        String contact = sc.nextLine().trim();
+        
+        List<Account> found = contact.indexOf('@') >= 0
+                ? contacts.findByEmail(contact, accounts)
+                : contacts.findByPhone(contact, accounts);
+        if (found.isEmpty()) {
+            System.out.println("Account not found");
+            return;
+        }
+        for (Account acc : found) {
+            acc.show();
+            System.out.println();
+        }
+    }
+    
+    void transferMoney() {
+        if (accounts.size() == 0) {
+            System.out.println("No accounts");
+            return;
+        }
+        
+        System.out.print("Enter from account number: ");
+        int from = sc.nextInt();
+        sc.nextLine();
+        
+        System.out.print("Enter to account number: ");
+        int to = sc.nextInt();
+        sc.nextLine();
+        
+        System.out.print("Enter amount to transfer: ");
+        double amt = sc.nextDouble();
+        sc.nextLine();
+        
+        transfer(from, to, amt);
+    }
+    
+    boolean transfer(int from, int to, double amt) {
+        Account a = findAccount(from);
+        Account b = findAccount(to);
+        if (a == null || b == null) {
+            System.out.println("Account not found");
+            return false;
+        }
+        if (a == b) {
+            System.out.println(BatchRunner.SAME_ACCOUNT);
+            return false;
+        }
+        long paise = Account.toPaise(amt);
+        if (paise <= 0) {
+            BankMetrics.invalidAmount();
+            System.out.println("Invalid amount");
+            return false;
+        }
+        long seq = durably(() -> Account.transfer(a, b, paise, () -> journal.transfer(a.accNo, b.accNo, paise)));
+        if (seq == NOT_SAVED) {
+            return false;
+        }
+        if (seq == Account.OVERFLOW) {
+            System.out.println(BatchRunner.TOO_LARGE);
+            return false;
+        }
+        if (seq == 0) {
+            System.out.println("Not enough money. Balance: " + Account.rupees(a.balance));
+            return false;
+        }
+        System.out.println("Money sent. Balance: " + Account.rupees(a.balance));
+        return true;
+    }
+    
+    void showStatement() {
+        if (accounts.size() == 0) {
+            System.out.println("No accounts");
+            return;
+        }
+        
+        System.out.print("Enter account number: ");
+        int no = sc.nextInt();
+        sc.nextLine();
+        
+        Account acc = findAccount(no);
+        if (acc == null) {
+            System.out.println("Account not found");
+            return;
+        }
+        
+        System.out.print("Enter from date (yyyy-mm-dd, blank for all): ");
+        String fromText = sc.nextLine().trim();
+        System.out.print("Enter to date (yyyy-mm-dd, blank for today): ");
+        String toText = sc.nextLine().trim();
+        
+        long from;
+        long to;
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            from = fromText.isEmpty() ? 0 : LocalDate.parse(fromText).atStartOfDay(zone).toInstant().toEpochMilli();
+            to = toText.isEmpty() ? Long.MAX_VALUE
+                    : LocalDate.parse(toText).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli() - 1;
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date");
+            return;
+        }
+        
+        System.out.println("Statement for account " + acc.accNo);
+        DateTimeFormatter when = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+        StringBuilder line = new StringBuilder();
+        int rows = acc.history().forEach(from, to, (time, amount, balance) -> {
+            line.setLength(0);
+            line.append(when.format(Instant.ofEpochMilli(time))).append(amount < 0 ? "  Taken: " : "  Added: ");
+            Account.appendRupees(line, Math.abs(amount));
+            line.append("  Balance: ");
+            Account.appendRupees(line, balance);
+            System.out.println(line);
+        });
+        System.out.println(rows + " transactions");
     }
     
     Account findAccount(int no) {
-        for (int i = 0; i < count; i++) {
-            if (accounts[i].getAccNo() == no) {
-                return accounts[i];
-            }
+        if (!BankMetrics.ON) {
+            return accounts.get(no);
         }
-        return null;
+        long start = BankMetrics.start();
+        Account acc = accounts.get(no);
+        BankMetrics.FIND.record(start, acc != null);
+        return acc;
     }
     
     void showMenu() {
@@ -198,7 +2884,11 @@ class BankApp {
             System.out.println("3. Withdraw");
             System.out.println("4. View Account");
             System.out.println("5. Update Contacts");
-            System.out.println("6. Exit");
+            System.out.println("6. Transfer");
+            System.out.println("7. Statement");
+            System.out.println("8. End of Day");
+            System.out.println("9. Find by Email/Phone");
+            System.out.println("10. Exit");
             System.out.print("Enter choice: ");
             
             choice = sc.nextInt();
@@ -221,16 +2911,139 @@ class BankApp {
                     updateContacts();
                     break;
                 case 6:
+                    transferMoney();
+                    break;
+                case 7:
+                    showStatement();
+                    break;
+                case 8:
+                    endOfDay();
+                    break;
+                case 9:
+                    findByContact();
+                    break;
+                case 10:
                     System.out.println("Thank you");
                     break;
                 default:
                     System.out.println("Wrong choice");
             }
-        } while (choice != 6);
+        } while (choice != 10);
+    }
+    
+    // Concurrent mode: many tellers hit the same accounts with deposits, withdrawals and
+    // transfers at once, then the total money is checked against what went in and out.
+    static void runTellers(int tellers, int numAccounts, int opsPerTeller) throws InterruptedException {
+        BankMetrics.start(null);
+        AccountStore store = new AccountStore(1); // numbered privately, not from Account.NUMBERS
+        long start = 0;
+        for (int i = 0; i < numAccounts; i++) {
+            Account acc = new Account(1 + i, "Teller test " + i, 100_000, "", "");
+            store.add(acc);
+            start += acc.balance;
+        }
+        int first = store.base;
+        LongAdder paidIn = new LongAdder();
+        LongAdder paidOut = new LongAdder();
+        LongAdder transfers = new LongAdder();
+        CountDownLatch done = new CountDownLatch(tellers);
+        long t0 = System.nanoTime();
+        for (int t = 0; t < tellers; t++) {
+            long seed = t;
+            new Thread(() -> {
+                Random rnd = new Random(seed);
+                for (int i = 0; i < opsPerTeller; i++) {
+                    Account a = store.get(first + rnd.nextInt(numAccounts));
+                    long paise = 1 + rnd.nextInt(50000);
+                    int op = rnd.nextInt(3);
+                    if (op == 0) {
+                        if (a.credit(paise) >= 0) {
+                            paidIn.add(paise);
+                        }
+                    } else if (op == 1) {
+                        if (a.debit(paise) >= 0) {
+                            paidOut.add(paise);
+                        }
+                    } else if (Account.transfer(a, store.get(first + rnd.nextInt(numAccounts)), paise)) {
+                        transfers.increment();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+        long total = 0;
+        boolean negative = false;
+        for (int i = 0; i < numAccounts; i++) {
+            long b = store.get(first + i).balance;
+            total += b;
+            negative |= b < 0;
+        }
+        long expected = start + paidIn.sum() - paidOut.sum();
+        System.out.println(tellers + " tellers, " + (long) tellers * opsPerTeller + " operations in " + ms + " ms, "
+                + transfers.sum() + " transfers");
+        System.out.println("Total money: " + Account.rupees(total) + " (expected " + Account.rupees(expected) + ")");
+        System.out.println(total == expected && !negative ? "Balances consistent" : "BALANCES INCONSISTENT");
+        if (BankMetrics.ON) {
+            System.out.print(BankMetrics.report());
+        }
     }
     
-    public static void main(String[] args) {
+    public static void main(String[] args) throws InterruptedException, IOException {
+        if (args.length > 0 && args[0].equals("--commands")) {
+            // replies on stdout; recovery and timing figures on stderr
+            BankApp app = new BankApp();
+            app.console = System.err;
+            app.open();
+            CommandProtocol protocol;
+            long t0 = System.nanoTime();
+            try (InputStream in = args.length > 1 ? Files.newInputStream(Paths.get(args[1])) : System.in) {
+                protocol = new CommandProtocol(app, in, new FileOutputStream(FileDescriptor.out));
+                protocol.run();
+            }
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            System.err.println(protocol.commands + " commands in " + ms + " ms"
+                    + (ms > 0 ? " (" + protocol.commands * 1000 / ms + " commands/s)" : ""));
+            app.close();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--eod")) {
+            BankApp app = new BankApp();
+            app.open();
+            app.endOfDay();
+            app.close();
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--batch")) {
+            Path in = Paths.get(args[1]);
+            Path out = Paths.get(args.length > 2 ? args[2] : args[1] + ".results");
+            int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+            BankApp app = new BankApp();
+            app.open();
+            BatchRunner batch = new BatchRunner(app, workers);
+            long t0 = System.nanoTime();
+            batch.run(in, out);
+            System.out.println(batch.summary((System.nanoTime() - t0) / 1_000_000));
+            System.out.println("Results written to " + out);
+            app.close();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--tellers")) {
+            int tellers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+            int numAccounts = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+            int ops = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+            runTellers(tellers, numAccounts, ops);
+            return;
+        }
         BankApp app = new BankApp();
+        try {
+            app.open();
+        } catch (IOException e) {
+            System.out.println("Could not load saved accounts: " + e.getMessage());
+            return;
+        }
         app.showMenu();
+        app.close();
     }
 }
\ No newline at end of file
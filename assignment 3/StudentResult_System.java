@@ -1,7 +1,25 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+import java.util.stream.IntStream;
 
 // ----------------- CUSTOM EXCEPTION -----------------
 class InvalidMarksException extends Exception {
@@ -15,28 +33,42 @@ class Student {
     private int rollNumber;
     private String studentName;
     private int[] marks;
+    private final int total; // marks never change after construction, so the sum is kept
 
     public Student(int rollNumber, String studentName, int[] marks) {
         this.rollNumber = rollNumber;
         this.studentName = studentName;
         this.marks = marks;
+        int sum = 0;
+        for (int m : marks) sum += m;
+        this.total = sum;
     }
 
     // Validate marks (0 to 100)
     public void validateMarks() throws InvalidMarksException {
-        for (int i = 0; i < marks.length; i++) {
-            if (marks[i] < 0 || marks[i] > 100) {
-                throw new InvalidMarksException(
-                        "Invalid Marks in Subject " + (i + 1) + " (Allowed: 0–100)"
-                );
-            }
+        int i = checkMarks(marks, 0, marks.length);
+        if (i >= 0) {
+            throw new InvalidMarksException(
+                    "Invalid Marks in Subject " + (i + 1) + " (Allowed: 0–100)"
+            );
+        }
+    }
+
+    // Index of the first of count marks starting at from that is outside 0-100, or -1.
+    // Bulk import checks rows with this directly, so a bad row costs no exception.
+    public static int checkMarks(int[] marks, int from, int count) {
+        for (int i = 0; i < count; i++) {
+            if (marks[from + i] < 0 || marks[from + i] > 100) return i;
         }
+        return -1;
     }
 
     public double calculateAverage() {
-        int sum = 0;
-        for (int m : marks) sum += m;
-        return sum / (double) marks.length; // use marks.length instead of hardcoded 3
+        return total / (double) marks.length; // use marks.length instead of hardcoded 3
+    }
+
+    public int getTotal() {
+        return total;
     }
 
     public void displayResult() {
@@ -48,8 +80,9 @@ class Student {
             System.out.println("  Subject " + (i + 1) + ": " + marks[i]);
         }
 
-        String status = (calculateAverage() >= 40) ? "PASS" : "FAIL";
-        System.out.printf("Average: %.2f%n", calculateAverage());
+        double average = calculateAverage();
+        String status = (average >= 40) ? "PASS" : "FAIL";
+        System.out.printf("Average: %.2f%n", average);
         System.out.println("Result: " + status);
         System.out.println("--------------------------\n");
     }
@@ -57,12 +90,1001 @@ class Student {
     public int getRollNumber() {
         return rollNumber;
     }
+
+    public String getStudentName() {
+        return studentName;
+    }
+
+    public int[] getMarks() {
+        return marks;
+    }
+}
+
+// ----------------- ROLL NUMBER INDEX -----------------
+// Open-addressing map from roll number to Student, on plain int keys (no Integer boxing).
+// Linear probing in a power-of-two table kept at most half full. Integer.MIN_VALUE marks
+// an empty slot, so a student with that roll number is kept in a field of its own.
+// Roll numbers are also appended to an int array, which is sorted lazily for range queries.
+class RollIndex {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private Student[] values;
+    private int mask;
+    private int size;
+    private Student minRollStudent; // the student whose roll number is EMPTY, if any
+
+    private int[] rolls;
+    private int rollCount;
+    private boolean sorted = true;
+
+    public RollIndex(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) capacity <<= 1;
+        allocate(capacity);
+        rolls = new int[Math.max(16, expected)];
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new Student[capacity];
+        mask = capacity - 1;
+    }
+
+    static int slot(int roll, int mask) {
+        int h = roll * 0x9E3779B9; // spread sequential roll numbers across the table
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Student get(int roll) {
+        if (roll == EMPTY) return minRollStudent;
+        int[] k = keys;
+        int i = slot(roll, mask);
+        while (true) {
+            int key = k[i];
+            if (key == roll) return values[i];
+            if (key == EMPTY) return null;
+            i = (i + 1) & mask;
+        }
+    }
+
+    // Adds the student unless the roll number is taken; returns false for a duplicate
+    public boolean putIfAbsent(Student s) {
+        int roll = s.getRollNumber();
+        if (roll == EMPTY) {
+            if (minRollStudent != null) return false;
+            minRollStudent = s;
+        } else {
+            int i = slot(roll, mask);
+            while (keys[i] != EMPTY) {
+                if (keys[i] == roll) return false;
+                i = (i + 1) & mask;
+            }
+            keys[i] = roll;
+            values[i] = s;
+            if ((size + 1) * 2 > keys.length) rehash(keys.length * 2);
+        }
+        size++;
+        if (rollCount == rolls.length) rolls = Arrays.copyOf(rolls, rollCount * 2);
+        if (rollCount > 0 && roll < rolls[rollCount - 1]) sorted = false;
+        rolls[rollCount++] = roll;
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Student[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == EMPTY) continue;
+            int i = slot(oldKeys[j], mask);
+            while (keys[i] != EMPTY) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    // Students with from <= roll <= to, in roll number order
+    public List<Student> range(int from, int to) {
+        List<Student> result = new ArrayList<>();
+        if (from > to) return result;
+        if (!sorted) {
+            Arrays.sort(rolls, 0, rollCount);
+            sorted = true;
+        }
+        int i = Arrays.binarySearch(rolls, 0, rollCount, from);
+        if (i < 0) i = -i - 1;
+        for (; i < rollCount && rolls[i] <= to; i++) {
+            result.add(get(rolls[i]));
+        }
+        return result;
+    }
+}
+
+// ----------------- MARKS STORE -----------------
+// Marks of every student, subject-major: column[subject][row], one byte per mark (0-100),
+// rows in the order students were added. Each subject also keeps a count of how many
+// students scored each mark. Those 101 counts are enough for the mean, spread, min/max,
+// pass rate and histogram, so statistics never rescan the columns and adding a student
+// only bumps one count per subject. recount() rebuilds all counts in one parallel pass.
+// The columns are a compact copy of the Students' marks kept only for that pass; marks
+// are read from the Student objects everywhere else.
+class MarksStore {
+    static final int MAX_MARK = 100;
+    static final int PASS_MARK = 40;
+    private static final int CHUNK = 1 << 16; // rows per task in recount()
+
+    private final int subjects;
+    private final byte[][] columns;
+    private int rows;
+    private long[][] counts; // counts[subject][mark]
+
+    public MarksStore(int subjects, int capacity) {
+        this.subjects = subjects;
+        this.columns = new byte[subjects][Math.max(16, capacity)];
+        this.counts = new long[subjects][MAX_MARK + 1];
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public int subjects() {
+        return subjects;
+    }
+
+    // Append one student's marks (already validated to 0-100); returns the row
+    public int add(int[] marks) {
+        int row = append(marks);
+        for (int s = 0; s < subjects; s++) {
+            counts[s][marks[s]]++;
+        }
+        return row;
+    }
+
+    // Append without touching the counts; the caller runs recount() when done
+    public int append(int[] marks) {
+        if (rows == columns[0].length) {
+            for (int s = 0; s < subjects; s++) {
+                columns[s] = Arrays.copyOf(columns[s], rows * 2);
+            }
+        }
+        for (int s = 0; s < subjects; s++) {
+            columns[s][rows] = (byte) marks[s];
+        }
+        return rows++;
+    }
+
+    // Rebuild the per-mark counts of every subject from the columns in a single pass:
+    // each task counts a block of rows for all subjects, then the blocks are summed.
+    public void recount() {
+        int n = rows;
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        counts = IntStream.range(0, chunks).parallel()
+                .mapToObj(c -> count(c * CHUNK, Math.min(n, (c + 1) * CHUNK)))
+                .reduce(MarksStore::merge)
+                .orElseGet(() -> new long[subjects][MAX_MARK + 1]);
+    }
+
+    private long[][] count(int from, int to) {
+        long[][] local = new long[subjects][MAX_MARK + 1];
+        for (int s = 0; s < subjects; s++) {
+            byte[] column = columns[s];
+            long[] c = local[s];
+            for (int i = from; i < to; i++) {
+                c[column[i]]++;
+            }
+        }
+        return local;
+    }
+
+    private static long[][] merge(long[][] a, long[][] b) {
+        for (int s = 0; s < a.length; s++) {
+            for (int m = 0; m <= MAX_MARK; m++) {
+                a[s][m] += b[s][m];
+            }
+        }
+        return a;
+    }
+
+    public SubjectStats stats(int subject) {
+        return new SubjectStats(subject, counts[subject].clone());
+    }
+}
+
+// ----------------- SUBJECT STATISTICS -----------------
+// Figures for one subject, derived from how many students scored each mark
+class SubjectStats {
+    final int subject;
+    final long[] counts; // counts[mark]
+    final long students;
+    final int min;
+    final int max;
+    final double mean;
+    final double stdDev;
+    final double passRate;
+
+    SubjectStats(int subject, long[] counts) {
+        this.subject = subject;
+        this.counts = counts;
+        long n = 0;
+        long sum = 0;
+        long passed = 0;
+        int lo = -1;
+        int hi = -1;
+        for (int m = 0; m < counts.length; m++) {
+            if (counts[m] == 0) continue;
+            if (lo < 0) lo = m;
+            hi = m;
+            n += counts[m];
+            sum += counts[m] * m;
+            if (m >= MarksStore.PASS_MARK) passed += counts[m];
+        }
+        double avg = n == 0 ? 0 : sum / (double) n;
+        double squares = 0;
+        for (int m = lo < 0 ? 0 : lo; m <= hi; m++) {
+            squares += counts[m] * (m - avg) * (m - avg);
+        }
+        this.students = n;
+        this.min = lo;
+        this.max = hi;
+        this.mean = avg;
+        this.stdDev = n == 0 ? 0 : Math.sqrt(squares / n);
+        this.passRate = n == 0 ? 0 : 100.0 * passed / n;
+    }
+
+    // Students per band of ten marks: 0-9, 10-19, ..., 90-100
+    public long[] bands() {
+        long[] bands = new long[10];
+        for (int m = 0; m < counts.length; m++) {
+            bands[Math.min(m / 10, 9)] += counts[m];
+        }
+        return bands;
+    }
+
+    public void print() {
+        System.out.println("Subject " + (subject + 1) + ":");
+        if (students == 0) {
+            System.out.println("  No marks yet.");
+            return;
+        }
+        System.out.printf("  Mean: %.2f  Std Dev: %.2f  Min: %d  Max: %d  Pass Rate: %.1f%%%n",
+                mean, stdDev, min, max, passRate);
+        long[] bands = bands();
+        long widest = Arrays.stream(bands).max().orElse(1);
+        for (int b = 0; b < bands.length; b++) {
+            int bar = (int) (40 * bands[b] / Math.max(1, widest));
+            System.out.printf("  %3d-%-3d | %-40s %d%n", b * 10, b == 9 ? 100 : b * 10 + 9, "#".repeat(bar), bands[b]);
+        }
+    }
+}
+
+// ----------------- BULK IMPORT -----------------
+// Why a CSV row was rejected. Parsing only records the ordinal, so bad rows cost no exceptions or messages.
+enum ImportError {
+    FIELD_COUNT("Wrong number of fields"),
+    BAD_ROLL("Roll number is not an integer"),
+    EMPTY_NAME("Name is empty"),
+    BAD_MARK("Mark is not an integer"),
+    MARK_RANGE("Mark outside 0-100"),
+    DUPLICATE_ROLL("Roll number already exists"),
+    NAME_TOO_LONG("Name longer than " + StudentFile.NAME_BYTES + " bytes");
+
+    static final ImportError[] ALL = values();
+    final String message;
+
+    ImportError(String message) {
+        this.message = message;
+    }
+}
+
+// Rejected rows of one import: a count per error, plus the first rows of each kind with
+// line and subject, written out as CSV rather than printed one by one
+class ImportReport {
+    static final int KEEP = 1000; // rejected rows kept per error kind
+
+    final long[] counts = new long[ImportError.ALL.length];
+    final List<long[]> rows = new ArrayList<>(); // {line, error ordinal, subject or -1}
+    long lines;
+    long imported;
+    long millis;
+
+    void reject(long line, int error, int subject) {
+        if (counts[error]++ < KEEP) {
+            rows.add(new long[]{line, error, subject});
+        }
+    }
+
+    long rejected() {
+        return Arrays.stream(counts).sum();
+    }
+
+    void write(Path file) throws IOException {
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            out.write("line,error,subject,message\n");
+            for (long[] r : rows) {
+                ImportError e = ImportError.ALL[(int) r[1]];
+                out.write(r[0] + "," + e + "," + (r[2] < 0 ? "" : String.valueOf(r[2] + 1)) + "," + e.message + "\n");
+            }
+        }
+    }
+
+    void printSummary() {
+        System.out.println("Lines read: " + lines + ", imported: " + imported + ", rejected: " + rejected()
+                + " (" + millis + " ms)");
+        for (ImportError e : ImportError.ALL) {
+            if (counts[e.ordinal()] > 0) {
+                System.out.println("  " + e.message + ": " + counts[e.ordinal()]);
+            }
+        }
+    }
+}
+
+// Parses "roll,name,mark1,...,markN" rows straight from bytes. A block of the file is
+// cut at line ends into slices that parse in parallel into primitive arrays; rows then
+// go into the ResultManager in file order so duplicates are decided as if read one by one.
+class CsvImporter {
+    static final int BLOCK = 8 << 20;
+    static final int SLICE = 256 << 10;
+
+    // One parsed slice: parallel arrays indexed by row
+    static final class Slice {
+        final int subjects;
+        long firstLine; // line number in the file of the slice's first line
+        int count;
+        int lines; // lines in the slice, blank ones included
+        int[] line = new int[256]; // line number within the slice
+        int[] roll = new int[256];
+        String[] name = new String[256];
+        int[] marks;
+        byte[] error = new byte[256]; // ImportError ordinal + 1, 0 when valid
+        byte[] subject = new byte[256]; // subject of a mark error
+
+        Slice(int subjects) {
+            this.subjects = subjects;
+            this.marks = new int[256 * subjects];
+        }
+
+        int next(int lineNo) {
+            if (count == roll.length) {
+                int n = count * 2;
+                line = Arrays.copyOf(line, n);
+                roll = Arrays.copyOf(roll, n);
+                name = Arrays.copyOf(name, n);
+                marks = Arrays.copyOf(marks, n * subjects);
+                error = Arrays.copyOf(error, n);
+                subject = Arrays.copyOf(subject, n);
+            }
+            line[count] = lineNo;
+            error[count] = 0;
+            return count++;
+        }
+    }
+
+    final int subjects;
+    final int maxNameBytes; // UTF-8 bytes; longer names are rejected rather than cut
+
+    CsvImporter(int subjects, int maxNameBytes) {
+        this.subjects = subjects;
+        this.maxNameBytes = maxNameBytes;
+    }
+
+    // Reads the file block by block; sink receives each block's slices in file order
+    void read(Path file, Consumer<Slice> sink) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buf = new byte[BLOCK];
+            int carry = 0;
+            boolean first = true;
+            long lines = 0;
+            while (true) {
+                int n = in.readNBytes(buf, carry, buf.length - carry);
+                int end = carry + n;
+                boolean eof = end < buf.length;
+                int cut = eof ? end : lastLineEnd(buf, end);
+                if (cut < 0) { // a single line longer than the buffer
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                    carry = end;
+                    continue;
+                }
+                int start = first ? skipHeader(buf, cut) : 0;
+                if (start > 0) lines++;
+                first = false;
+                for (Slice slice : parse(buf, start, cut)) {
+                    slice.firstLine = lines + 1;
+                    lines += slice.lines;
+                    sink.accept(slice);
+                }
+                if (eof) return;
+                carry = end - cut;
+                System.arraycopy(buf, cut, buf, 0, carry);
+            }
+        }
+    }
+
+    // Line breaks are "\n", "\r" or "\r\n"; a '\r' ending the block may be half of a "\r\n"
+    private static int lastLineEnd(byte[] buf, int end) {
+        for (int i = end - 1; i >= 0; i--) {
+            if (buf[i] == '\n' || (buf[i] == '\r' && i < end - 1)) return i + 1;
+        }
+        return -1;
+    }
+
+    private static boolean lineStart(byte[] buf, int i) {
+        return buf[i - 1] == '\n' || (buf[i - 1] == '\r' && buf[i] != '\n');
+    }
+
+    private static int nextLine(byte[] buf, int end, int to) {
+        return end + 1 < to && buf[end] == '\r' && buf[end + 1] == '\n' ? end + 2 : end + 1;
+    }
+
+    // A first line whose roll field is not a number is taken as a header ("roll,name,...")
+    private static int skipHeader(byte[] buf, int end) {
+        int i = 0;
+        while (i < end && buf[i] == ' ') i++;
+        if (i < end && (buf[i] == '-' || (buf[i] >= '0' && buf[i] <= '9'))) return 0;
+        while (i < end && buf[i] != '\n' && buf[i] != '\r') i++;
+        return Math.min(end, nextLine(buf, i, end));
+    }
+
+    private List<Slice> parse(byte[] buf, int from, int to) {
+        List<int[]> bounds = new ArrayList<>();
+        for (int s = from; s < to; ) {
+            int e = Math.min(to, s + SLICE);
+            while (e < to && !lineStart(buf, e)) e++;
+            bounds.add(new int[]{s, e});
+            s = e;
+        }
+        return bounds.parallelStream().map(b -> parseSlice(buf, b[0], b[1])).toList();
+    }
+
+    Slice parseSlice(byte[] buf, int from, int to) {
+        Slice out = new Slice(subjects);
+        int pos = from;
+        while (pos < to) {
+            int end = pos;
+            while (end < to && buf[end] != '\n' && buf[end] != '\r') end++;
+            int lineNo = out.lines++;
+            if (end > pos && !blank(buf, pos, end)) {
+                parseRow(buf, pos, end, out, out.next(lineNo));
+            }
+            pos = nextLine(buf, end, to);
+        }
+        return out;
+    }
+
+    private static boolean blank(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != ' ' && buf[i] != '\t') return false;
+        }
+        return true;
+    }
+
+    private void parseRow(byte[] buf, int from, int to, Slice out, int row) {
+        int fieldEnd = field(buf, from, to);
+        long roll = integer(buf, from, fieldEnd);
+        if (roll == Long.MIN_VALUE || roll < Integer.MIN_VALUE || roll > Integer.MAX_VALUE) {
+            fail(out, row, fieldEnd == to ? ImportError.FIELD_COUNT : ImportError.BAD_ROLL, -1);
+            return;
+        }
+        out.roll[row] = (int) roll;
+        if (fieldEnd == to) {
+            fail(out, row, ImportError.FIELD_COUNT, -1);
+            return;
+        }
+        int nameStart = fieldEnd + 1;
+        int nameEnd = field(buf, nameStart, to);
+        int base = row * subjects;
+        int pos = nameEnd;
+        for (int s = 0; s < subjects; s++) {
+            if (pos == to) {
+                fail(out, row, ImportError.FIELD_COUNT, -1);
+                return;
+            }
+            int end = field(buf, pos + 1, to);
+            long mark = integer(buf, pos + 1, end);
+            if (mark == Long.MIN_VALUE) {
+                fail(out, row, ImportError.BAD_MARK, s);
+                return;
+            }
+            out.marks[base + s] = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, mark));
+            pos = end;
+        }
+        if (pos != to) {
+            fail(out, row, ImportError.FIELD_COUNT, -1);
+            return;
+        }
+        int bad = Student.checkMarks(out.marks, base, subjects);
+        if (bad >= 0) {
+            fail(out, row, ImportError.MARK_RANGE, bad);
+            return;
+        }
+        while (nameStart < nameEnd && buf[nameStart] == ' ') nameStart++;
+        while (nameEnd > nameStart && buf[nameEnd - 1] == ' ') nameEnd--;
+        if (nameStart == nameEnd) {
+            fail(out, row, ImportError.EMPTY_NAME, -1);
+            return;
+        }
+        if (nameEnd - nameStart > maxNameBytes) {
+            fail(out, row, ImportError.NAME_TOO_LONG, -1);
+            return;
+        }
+        out.name[row] = new String(buf, nameStart, nameEnd - nameStart, StandardCharsets.UTF_8);
+    }
+
+    private static void fail(Slice out, int row, ImportError e, int subject) {
+        out.error[row] = (byte) (e.ordinal() + 1);
+        out.subject[row] = (byte) subject;
+    }
+
+    private static int field(byte[] buf, int from, int to) {
+        while (from < to && buf[from] != ',') from++;
+        return from;
+    }
+
+    // An optionally signed decimal integer with surrounding spaces, or Long.MIN_VALUE
+    private static long integer(byte[] buf, int from, int to) {
+        while (from < to && buf[from] == ' ') from++;
+        while (to > from && buf[to - 1] == ' ') to--;
+        boolean negative = from < to && buf[from] == '-';
+        if (negative) from++;
+        if (from == to || to - from > 18) return Long.MIN_VALUE;
+        long v = 0;
+        for (int i = from; i < to; i++) {
+            int d = buf[i] - '0';
+            if (d < 0 || d > 9) return Long.MIN_VALUE;
+            v = v * 10 + d;
+        }
+        return negative ? -v : v;
+    }
+}
+
+// ----------------- RANK INDEX -----------------
+// Order statistics over students' averages. An average is total marks / SUBJECT_COUNT,
+// so students can be ordered by total, which only takes 0..100*SUBJECT_COUNT values. A
+// Fenwick tree over those totals counts students at or below any total in O(log), which
+// gives rank and percentile; a bucket of students per total serves top-k and average ranges.
+// Lookups share a read lock, so result-day queries run side by side; adds take the write lock.
+class RankIndex {
+    private final int subjects;
+    private final int maxTotal;
+    private final long[] tree; // Fenwick tree, 1-based: total t lives at t + 1
+    private final Student[][] buckets;
+    private final int[] bucketSizes;
+    private long size;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public RankIndex(int subjects) {
+        this.subjects = subjects;
+        this.maxTotal = MarksStore.MAX_MARK * subjects;
+        this.tree = new long[maxTotal + 2];
+        this.buckets = new Student[maxTotal + 1][];
+        this.bucketSizes = new int[maxTotal + 1];
+    }
+
+    public void add(Student s) {
+        int total = s.getTotal();
+        lock.writeLock().lock();
+        try {
+            for (int i = total + 1; i < tree.length; i += i & -i) {
+                tree[i]++;
+            }
+            Student[] bucket = buckets[total];
+            int n = bucketSizes[total];
+            if (bucket == null || n == bucket.length) {
+                buckets[total] = bucket = bucket == null ? new Student[4] : Arrays.copyOf(bucket, n * 2);
+            }
+            bucket[n] = s;
+            bucketSizes[total] = n + 1;
+            size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Students with a total of at most t
+    private long atMost(int t) {
+        long n = 0;
+        for (int i = Math.min(t, maxTotal) + 1; i > 0; i -= i & -i) {
+            n += tree[i];
+        }
+        return n;
+    }
+
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // 1 + the number of students with a higher average; equal averages share a rank
+    public long rank(Student s) {
+        lock.readLock().lock();
+        try {
+            return 1 + size - atMost(s.getTotal());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Share of the class, in percent, whose average is at or below this student's
+    public double percentile(Student s) {
+        lock.readLock().lock();
+        try {
+            return size == 0 ? 0 : 100.0 * atMost(s.getTotal()) / size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // The k best students, highest average first; ties in the order they were added
+    public List<Student> top(int k) {
+        List<Student> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int t = maxTotal; t >= 0 && result.size() < k; t--) {
+                for (int i = 0; i < bucketSizes[t] && result.size() < k; i++) {
+                    result.add(buckets[t][i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Number of students with low <= average <= high
+    public long countBetween(double low, double high) {
+        int from = lowestTotal(low);
+        int to = highestTotal(high);
+        if (from > to) return 0;
+        lock.readLock().lock();
+        try {
+            return atMost(to) - atMost(from - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Students with low <= average <= high, highest average first
+    public List<Student> between(double low, double high) {
+        List<Student> result = new ArrayList<>();
+        int from = lowestTotal(low);
+        int to = highestTotal(high);
+        lock.readLock().lock();
+        try {
+            for (int t = to; t >= from; t--) {
+                for (int i = 0; i < bucketSizes[t]; i++) {
+                    result.add(buckets[t][i]);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Smallest total whose average is >= low (the epsilon absorbs rounding in low * subjects)
+    private int lowestTotal(double low) {
+        return (int) Math.max(0, Math.min(maxTotal + 1, Math.ceil(low * subjects - 1e-9)));
+    }
+
+    private int highestTotal(double high) {
+        return (int) Math.max(-1, Math.min(maxTotal, Math.floor(high * subjects + 1e-9)));
+    }
+}
+
+// ----------------- STUDENT FILE -----------------
+// Students on disk as fixed-width records in a memory-mapped file, with a memory-mapped
+// roll number directory beside it (<file>.dir), so opening maps both files and reads nothing.
+//
+// Data file: a header (magic, version, subject count, record size, name bytes, at offset 24
+// the number of committed records, and from offset 32 the number of committed students with
+// each total 0..100 * subjects, so ranks need no scan), 4 KB or a multiple of it, then
+// records in slot order:
+//   roll (int) | CRC32C of the rest (int) | name length (byte) | marks (1 byte each) | name (UTF-8)
+// Directory: a 4 KB header (magic, capacity, used, records covered), then an open-addressing
+// table of (roll, slot + 1) int pairs, 0 meaning empty.
+//
+// append() writes a record and its directory entry; commit() forces both to disk and only
+// then stores the new record count in the header. A crash before that leaves the old count,
+// and the records past it are ignored. Directory entries are only hints: every hit is
+// checked against the record's roll, and a directory older than the data file is rebuilt.
+class StudentFile {
+    static final int MAGIC = 0x53545253;     // "STRS"
+    static final int DIR_MAGIC = 0x53545244; // "STRD"
+    static final int VERSION = 2; // 1 had no per-total counts
+    static final int HEADER = 4096;
+    static final int TOTALS = 32; // header offset of the per-total counts
+    static final int NAME_BYTES = 40; // UTF-8 bytes; longer names are refused
+    static final int SEGMENT = 4 << 20; // records are mapped in pieces of about this size
+    static final int MAX_DIRECTORY = 1 << 27; // entries; keeps the directory in one mapping
+
+    private final Path path;
+    private final Path dirPath;
+    private final int subjects;
+    private final int recordSize;
+    private final int perSegment;
+    private final FileChannel channel;
+    private final int headerSize;
+    private final MappedByteBuffer header;
+    private final long[] totals; // students with each total, committed or not
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final byte[] scratch;
+    private final CRC32C crc = new CRC32C();
+    private long committed;
+    private long count; // committed plus appended since the last commit
+
+    private FileChannel dirChannel;
+    private MappedByteBuffer dir;
+    private int dirMask;
+    private long dirUsed;
+
+    private StudentFile(Path path, int subjects) throws IOException {
+        this.path = path;
+        this.dirPath = Paths.get(path + ".dir");
+        this.subjects = subjects;
+        this.recordSize = (9 + subjects + NAME_BYTES + 7) & ~7;
+        this.perSegment = SEGMENT / recordSize;
+        this.scratch = new byte[recordSize];
+        this.totals = new long[MarksStore.MAX_MARK * subjects + 1];
+        this.headerSize = (TOTALS + 8 * totals.length + HEADER - 1) / HEADER * HEADER;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean fresh = channel.size() == 0;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+        int version = header.getInt(4);
+        if (fresh) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, subjects).putInt(12, recordSize)
+                    .putInt(16, NAME_BYTES).putLong(24, 0);
+            header.force();
+        } else if (header.getInt(0) != MAGIC || (version != VERSION && version != 1)) {
+            throw new IOException(path + " is not a student file");
+        } else if (header.getInt(8) != subjects || header.getInt(12) != recordSize
+                || header.getInt(16) != NAME_BYTES) {
+            throw new IOException(path + " holds " + header.getInt(8) + " subjects per student, not " + subjects);
+        } else if (version == 1 && headerSize != HEADER) {
+            throw new IOException(path + " was written by an older version; import its students again");
+        }
+        committed = count = header.getLong(24);
+        long sum = 0;
+        for (int t = 0; t < totals.length; t++) {
+            totals[t] = header.getLong(TOTALS + 8 * t);
+            sum += totals[t];
+        }
+        if (version == 1 || sum != committed) {
+            countTotals(); // an older file, or counts that do not match the records
+        }
+    }
+
+    // Recount the totals of every committed record and store them; a one-off full read
+    private void countTotals() throws IOException {
+        Arrays.fill(totals, 0);
+        for (long slot = 0; slot < committed; slot++) {
+            totals[read(slot).getTotal()]++;
+        }
+        for (int t = 0; t < totals.length; t++) {
+            header.putLong(TOTALS + 8 * t, totals[t]);
+        }
+        header.putInt(4, VERSION);
+        header.force();
+    }
+
+    public static StudentFile open(Path path, int subjects) throws IOException {
+        StudentFile file = new StudentFile(path, subjects);
+        try {
+            file.openDirectory();
+        } catch (IOException e) {
+            file.channel.close();
+            throw e;
+        }
+        return file;
+    }
+
+    private void openDirectory() throws IOException {
+        if (Files.exists(dirPath)) {
+            dirChannel = FileChannel.open(dirPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long size = dirChannel.size();
+            if (size >= HEADER) {
+                MappedByteBuffer h = dirChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+                int capacity = h.getInt(4);
+                if (h.getInt(0) == DIR_MAGIC && Integer.bitCount(capacity) == 1
+                        && size == HEADER + 8L * capacity && h.getLong(16) >= committed) {
+                    dir = dirChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    dirMask = capacity - 1;
+                    dirUsed = h.getLong(8);
+                    return;
+                }
+            }
+            dirChannel.close();
+        }
+        rebuildDirectory(1024); // missing, damaged or behind the data file
+    }
+
+    // Writes a fresh directory for slots [0, count) beside the old one and swaps it in
+    private void rebuildDirectory(int minCapacity) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(minCapacity, (int) Math.min(MAX_DIRECTORY, count * 2)) - 1) << 1;
+        if (count * 2 > capacity) {
+            throw new IOException("Roll number directory is full (" + count + " students)");
+        }
+        Path tmp = Paths.get(dirPath + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer table = out.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 8L * capacity);
+            int mask = capacity - 1;
+            for (long slot = 0; slot < count; slot++) {
+                int roll = roll(slot);
+                int i = RollIndex.slot(roll, mask);
+                while (table.getInt(HEADER + 8 * i + 4) != 0) i = (i + 1) & mask;
+                table.putInt(HEADER + 8 * i, roll).putInt(HEADER + 8 * i + 4, (int) slot + 1);
+            }
+            table.putInt(0, DIR_MAGIC).putInt(4, capacity).putLong(8, count).putLong(16, count);
+            table.force();
+        }
+        if (dirChannel != null) dirChannel.close();
+        Files.move(tmp, dirPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirChannel = FileChannel.open(dirPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        dir = dirChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + 8L * capacity);
+        dirMask = capacity - 1;
+        dirUsed = count;
+    }
+
+    public long size() {
+        return count;
+    }
+
+    private MappedByteBuffer segment(long slot) throws IOException {
+        int index = (int) (slot / perSegment);
+        while (segments.size() <= index) {
+            long start = headerSize + (long) segments.size() * perSegment * recordSize;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, (long) perSegment * recordSize));
+        }
+        return segments.get(index);
+    }
+
+    private int offset(long slot) {
+        return (int) (slot % perSegment) * recordSize;
+    }
+
+    private int roll(long slot) throws IOException {
+        return segment(slot).getInt(offset(slot));
+    }
+
+    // Slot of the student with this roll number, or -1
+    public long find(int roll) throws IOException {
+        int i = RollIndex.slot(roll, dirMask);
+        while (true) {
+            int at = HEADER + 8 * i;
+            int slotPlusOne = dir.getInt(at + 4);
+            if (slotPlusOne == 0) return -1;
+            long slot = slotPlusOne - 1;
+            if (dir.getInt(at) == roll && slot < count && roll(slot) == roll) return slot;
+            i = (i + 1) & dirMask;
+        }
+    }
+
+    public Student read(long slot) throws IOException {
+        segment(slot).get(offset(slot), scratch);
+        crc.reset();
+        crc.update(scratch, 0, 4);
+        crc.update(scratch, 8, recordSize - 8);
+        ByteBuffer r = ByteBuffer.wrap(scratch);
+        if (r.getInt(4) != (int) crc.getValue()) {
+            throw new IOException("Student record " + slot + " in " + path + " is damaged");
+        }
+        int[] marks = new int[subjects];
+        for (int s = 0; s < subjects; s++) {
+            marks[s] = scratch[9 + s];
+        }
+        String name = new String(scratch, 9 + subjects, scratch[8], StandardCharsets.UTF_8);
+        return new Student(r.getInt(0), name, marks);
+    }
+
+    static boolean fits(String name) {
+        return name.getBytes(StandardCharsets.UTF_8).length <= NAME_BYTES;
+    }
+
+    // Writes the student into the next slot; it is durable after the next commit()
+    public long append(Student s) throws IOException {
+        long slot = count;
+        if ((dirUsed + 1) * 2 > dirMask + 1) {
+            rebuildDirectory((dirMask + 1) * 2);
+        }
+        Arrays.fill(scratch, (byte) 0);
+        ByteBuffer r = ByteBuffer.wrap(scratch);
+        r.putInt(0, s.getRollNumber());
+        int[] marks = s.getMarks();
+        for (int i = 0; i < subjects; i++) {
+            scratch[9 + i] = (byte) marks[i];
+        }
+        byte[] name = s.getStudentName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > NAME_BYTES) { // callers check fits() first
+            throw new IllegalArgumentException("Name longer than " + NAME_BYTES + " bytes: " + s.getStudentName());
+        }
+        scratch[8] = (byte) name.length;
+        System.arraycopy(name, 0, scratch, 9 + subjects, name.length);
+        crc.reset();
+        crc.update(scratch, 0, 4);
+        crc.update(scratch, 8, recordSize - 8);
+        r.putInt(4, (int) crc.getValue());
+        segment(slot).put(offset(slot), scratch);
+
+        int roll = s.getRollNumber();
+        int i = RollIndex.slot(roll, dirMask);
+        while (dir.getInt(HEADER + 8 * i + 4) != 0 && dir.getInt(HEADER + 8 * i) != roll) {
+            i = (i + 1) & dirMask; // an entry for the same roll can only be left over from a crash
+        }
+        if (dir.getInt(HEADER + 8 * i + 4) == 0) dirUsed++;
+        dir.putInt(HEADER + 8 * i, roll).putInt(HEADER + 8 * i + 4, (int) slot + 1);
+        totals[s.getTotal()]++;
+        count = slot + 1;
+        return slot;
+    }
+
+    // 1 + the number of students with a higher total; equal totals share a rank
+    public long rank(int total) {
+        return 1 + count - atMost(total);
+    }
+
+    // Share of the students, in percent, whose total is at or below this one
+    public double percentile(int total) {
+        return count == 0 ? 0 : 100.0 * atMost(total) / count;
+    }
+
+    private long atMost(int total) {
+        long n = 0;
+        for (int t = 0; t <= total && t < totals.length; t++) {
+            n += totals[t];
+        }
+        return n;
+    }
+
+    // Make everything appended so far durable: records and directory first, then the count
+    public void commit() throws IOException {
+        if (count == committed) return;
+        for (long slot = committed; slot < count; ) {
+            int from = offset(slot);
+            long end = Math.min(count, (slot / perSegment + 1) * perSegment);
+            segment(slot).force(from, (int) (end - slot) * recordSize);
+            slot = end;
+        }
+        dir.putLong(8, dirUsed).putLong(16, count);
+        dir.force();
+        for (int t = 0; t < totals.length; t++) {
+            header.putLong(TOTALS + 8 * t, totals[t]);
+        }
+        header.putLong(24, count);
+        header.force();
+        committed = count;
+    }
+
+    public void close() throws IOException {
+        try {
+            commit();
+        } finally {
+            channel.close();
+            dirChannel.close();
+        }
+    }
 }
 
 // ----------------- RESULT MANAGER -----------------
 class ResultManager {
     private static final int SUBJECT_COUNT = 3; // change here if you want more subjects
-    private final List<Student> students = new ArrayList<>();
+    private final RollIndex byRoll = new RollIndex(16);
+    private final MarksStore marksStore = new MarksStore(SUBJECT_COUNT, 16);
+    private final RankIndex ranks = new RankIndex(SUBJECT_COUNT);
+    private StudentFile file; // null when results are kept in memory only
+    // Whether the in-memory views above hold every student. With a student file they are
+    // filled on the first class-wide query; single lookups go to the file directly.
+    private boolean loaded = true;
 
     // Add Student
     public void addStudent(Scanner sc) {
@@ -83,6 +1105,10 @@ class ResultManager {
                 System.out.println("Name cannot be empty. Student not added.");
                 return;
             }
+            if (file != null && !StudentFile.fits(name)) {
+                System.out.println("Name is longer than " + StudentFile.NAME_BYTES + " bytes. Student not added.");
+                return;
+            }
 
             int[] marks = new int[SUBJECT_COUNT];
             for (int i = 0; i < SUBJECT_COUNT; i++) {
@@ -106,7 +1132,8 @@ class ResultManager {
             Student s = new Student(roll, name, marks);
             // extra validation (redundant here but good demonstration)
             s.validateMarks();
-            students.add(s);
+            store(s, true);
+            if (file != null) file.commit();
 
             System.out.println("Student added successfully!");
 
@@ -117,6 +1144,8 @@ class ResultManager {
         } catch (InputMismatchException e) {
             System.out.println("Invalid Input! Please enter numeric values where required.");
             sc.nextLine(); // clear buffer
+        } catch (IOException e) {
+            System.out.println("Could not save student: " + e.getMessage());
         } catch (Exception e) {
             System.out.println("Unexpected Error: " + e.getMessage());
         } finally {
@@ -133,6 +1162,13 @@ class ResultManager {
             Student found = findStudentByRoll(roll);
             if (found != null) {
                 found.displayResult();
+                if (loaded) {
+                    System.out.printf("Class Rank: %d of %d (percentile %.1f)%n%n",
+                            ranks.rank(found), ranks.size(), ranks.percentile(found));
+                } else { // counts per total kept in the file header; no class load needed
+                    System.out.printf("Class Rank: %d of %d (percentile %.1f)%n%n",
+                            file.rank(found.getTotal()), file.size(), file.percentile(found.getTotal()));
+                }
             } else {
                 System.out.println("Student NOT FOUND!");
             }
@@ -140,16 +1176,219 @@ class ResultManager {
         } catch (InputMismatchException e) {
             System.out.println("Invalid Input! Enter a valid roll number.");
             sc.nextLine();
+        } catch (IOException e) {
+            System.out.println("Could not read student: " + e.getMessage());
         } finally {
             System.out.println("showStudentDetails() execution completed.\n");
         }
     }
 
-    private Student findStudentByRoll(int roll) {
-        for (Student s : students) {
-            if (s.getRollNumber() == roll) return s;
+    // List the students of a section, given as a range of roll numbers
+    public void showRollRange(Scanner sc) {
+        try {
+            System.out.print("Enter first roll number: ");
+            int from = readInt(sc);
+            System.out.print("Enter last roll number: ");
+            int to = readInt(sc);
+
+            if (!loadClass()) return;
+            printStudents(byRoll.range(from, to));
+
+        } catch (InputMismatchException e) {
+            System.out.println("Invalid Input! Enter valid roll numbers.");
+            sc.nextLine();
+        } finally {
+            System.out.println("showRollRange() execution completed.\n");
+        }
+    }
+
+    public void showTopStudents(Scanner sc) {
+        try {
+            System.out.print("How many students: ");
+            int k = readInt(sc);
+            if (!loadClass()) return;
+            List<Student> top = ranks.top(Math.max(0, k));
+            StringBuilder sb = new StringBuilder();
+            for (Student s : top) {
+                sb.append(String.format("#%-6d ", ranks.rank(s)));
+                appendRow(sb, s);
+            }
+            System.out.print(sb);
+            System.out.println(top.size() + " of " + ranks.size() + " student(s).");
+        } catch (InputMismatchException e) {
+            System.out.println("Invalid Input! Enter a whole number.");
+            sc.nextLine();
+        } finally {
+            System.out.println("showTopStudents() execution completed.\n");
+        }
+    }
+
+    public void showAverageRange(Scanner sc) {
+        try {
+            System.out.print("Enter lowest average: ");
+            double low = sc.nextDouble();
+            System.out.print("Enter highest average: ");
+            double high = sc.nextDouble();
+            if (!loadClass()) return;
+            printStudents(ranks.between(low, high));
+        } catch (InputMismatchException e) {
+            System.out.println("Invalid Input! Enter numeric averages.");
+            sc.nextLine();
+        } finally {
+            System.out.println("showAverageRange() execution completed.\n");
+        }
+    }
+
+    private void printStudents(List<Student> list) {
+        if (list.isEmpty()) {
+            System.out.println("No students in this range.");
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Student s : list) {
+            appendRow(sb, s);
+        }
+        System.out.print(sb);
+        System.out.println(list.size() + " student(s).");
+    }
+
+    private static void appendRow(StringBuilder sb, Student s) {
+        double avg = s.calculateAverage();
+        sb.append(String.format("%-8d %-24s %6.2f  %s%n", s.getRollNumber(), s.getStudentName(),
+                avg, avg >= 40 ? "PASS" : "FAIL"));
+    }
+
+    // Load students from a CSV file of roll,name,mark1,...,markN rows. Rows that fail
+    // validation or repeat a roll number are counted in the report, not printed.
+    public ImportReport importCsv(Path csv) throws IOException {
+        long t0 = System.nanoTime();
+        ImportReport report = new ImportReport();
+        try {
+            new CsvImporter(SUBJECT_COUNT, file != null ? StudentFile.NAME_BYTES : Integer.MAX_VALUE).read(csv, slice -> {
+                try {
+                    for (int r = 0; r < slice.count; r++) {
+                        long line = slice.firstLine + slice.line[r];
+                        if (slice.error[r] != 0) {
+                            report.reject(line, slice.error[r] - 1, slice.subject[r]);
+                            continue;
+                        }
+                        if (exists(slice.roll[r])) {
+                            report.reject(line, ImportError.DUPLICATE_ROLL.ordinal(), -1);
+                            continue;
+                        }
+                        int[] marks = Arrays.copyOfRange(slice.marks, r * SUBJECT_COUNT, (r + 1) * SUBJECT_COUNT);
+                        store(new Student(slice.roll[r], slice.name[r], marks), false);
+                        report.imported++;
+                    }
+                    if (file != null) file.commit();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                report.lines = slice.firstLine + slice.lines - 1;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            marksStore.recount();
+        }
+        report.millis = (System.nanoTime() - t0) / 1_000_000;
+        return report;
+    }
+
+    public void bulkImport(Scanner sc) {
+        try {
+            sc.nextLine(); // consume endline before reading the path
+            System.out.print("Enter CSV file path: ");
+            Path file = Paths.get(sc.nextLine().trim());
+            ImportReport report = importCsv(file);
+            report.printSummary();
+            if (report.rejected() > 0) {
+                Path errors = Paths.get(file + ".errors.csv");
+                report.write(errors);
+                System.out.println("Error report written to " + errors);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not import: " + e.getMessage());
+        } finally {
+            System.out.println("bulkImport() execution completed.\n");
+        }
+    }
+
+    // Per-subject figures for the whole class
+    public void showClassStatistics() {
+        if (!loadClass()) return;
+        System.out.println("\n----- Class Statistics (" + marksStore.size() + " students) -----");
+        for (int i = 0; i < SUBJECT_COUNT; i++) {
+            marksStore.stats(i).print();
+        }
+        System.out.println("------------------------------------------\n");
+    }
+
+    private Student findStudentByRoll(int roll) throws IOException {
+        if (loaded) return byRoll.get(roll);
+        long slot = file.find(roll);
+        return slot < 0 ? null : file.read(slot);
+    }
+
+    private boolean exists(int roll) throws IOException {
+        return loaded ? byRoll.get(roll) != null : file.find(roll) >= 0;
+    }
+
+    // Save a new student (durable at the caller's commit) and add it to the in-memory views
+    // if they are loaded. counted = false leaves the marks counts to a later recount().
+    private void store(Student s, boolean counted) throws IOException {
+        if (file != null) file.append(s);
+        if (loaded) {
+            byRoll.putIfAbsent(s);
+            if (counted) {
+                marksStore.add(s.getMarks());
+            } else {
+                marksStore.append(s.getMarks());
+            }
+            ranks.add(s);
+        }
+    }
+
+    // Fill the in-memory views from the student file, once
+    private boolean loadClass() {
+        if (loaded) return true;
+        try {
+            long t0 = System.nanoTime();
+            for (long slot = 0; slot < file.size(); slot++) {
+                Student s = file.read(slot);
+                byRoll.putIfAbsent(s);
+                marksStore.append(s.getMarks());
+                ranks.add(s);
+            }
+            marksStore.recount();
+            loaded = true;
+            System.out.println("Loaded " + marksStore.size() + " students (" + (System.nanoTime() - t0) / 1_000_000 + " ms)");
+            return true;
+        } catch (IOException e) {
+            System.out.println("Could not read student file: " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Open (or create) the student file; without it results stay in memory only
+    public void open(Path path) {
+        long t0 = System.nanoTime();
+        try {
+            file = StudentFile.open(path, SUBJECT_COUNT);
+            loaded = file.size() == 0;
+            System.out.printf("Opened %s: %d students (%.1f ms)%n", path, file.size(), (System.nanoTime() - t0) / 1e6);
+        } catch (IOException e) {
+            System.out.println("Could not open " + path + ": " + e.getMessage() + ". Results will not be saved.");
+        }
+    }
+
+    public void close() {
+        if (file == null) return;
+        try {
+            file.close();
+        } catch (IOException e) {
+            System.out.println("Could not save student file: " + e.getMessage());
         }
-        return null;
     }
 
     // Utility to read an int safely (throws InputMismatchException on bad token)
@@ -167,7 +1406,12 @@ class ResultManager {
                 System.out.println("\n======= STUDENT RESULT MANAGEMENT SYSTEM =======");
                 System.out.println("1. Add Student");
                 System.out.println("2. Show Student Details");
-                System.out.println("3. Exit");
+                System.out.println("3. List Students by Roll Range");
+                System.out.println("4. Class Statistics");
+                System.out.println("5. Bulk Import from CSV");
+                System.out.println("6. Top Students");
+                System.out.println("7. Students by Average Range");
+                System.out.println("8. Exit");
                 System.out.print("Enter your choice: ");
 
                 try {
@@ -176,7 +1420,12 @@ class ResultManager {
                     switch (choice) {
                         case 1 -> addStudent(sc);
                         case 2 -> showStudentDetails(sc);
-                        case 3 -> System.out.println("Exiting...");
+                        case 3 -> showRollRange(sc);
+                        case 4 -> showClassStatistics();
+                        case 5 -> bulkImport(sc);
+                        case 6 -> showTopStudents(sc);
+                        case 7 -> showAverageRange(sc);
+                        case 8 -> System.out.println("Exiting...");
                         default -> System.out.println("Invalid Choice! Try again.");
                     }
 
@@ -185,12 +1434,14 @@ class ResultManager {
                     sc.nextLine(); // clear buffer
                 }
 
-            } while (choice != 3);
+            } while (choice != 8);
         } // scanner closed here
     }
 
     public static void main(String[] args) {
         ResultManager manager = new ResultManager();
+        manager.open(Paths.get(System.getProperty("students.file", "students.dat")));
         manager.mainMenu();
+        manager.close();
     }
 }
@@ -1,7 +1,37 @@
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.text.Normalizer;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
 
 /**
  * Cleaned and improved version of the handwritten LibrarySystem.
@@ -10,59 +40,1904 @@ import java.util.*;
  * - Uses a single Scanner instance (avoids resource leak warnings)
  * - Auto-generates unique book IDs
  * - Better error messages and simple validation
+ * - Journals each change to library.log instead of rewriting the data files;
+ *   books.txt/members.txt are only rewritten when the journal is compacted
+ * - Safe for concurrent use; "--server [port]" serves many desks over a local socket
+ * - Optional binary snapshot (library.snap); "--to-binary"/"--to-text" convert between formats
+ * - Records who holds each issued book and when it is due (loans.txt)
+ * - Optional tiered book store: a bounded set of hot Book objects over an mmap record file
+ * - Live per-category and per-author counts of books and issued books
  */
 public class LibrarySystem {
 
     private static final Path BOOK_FILE = Paths.get("books.txt");
     private static final Path MEMBER_FILE = Paths.get("members.txt");
+    private static final Path LOAN_FILE = Paths.get("loans.txt");
+    private static final Path JOURNAL_FILE = Paths.get("library.log");
+    private static final Path SEQUENCE_FILE = Paths.get("sequences.txt");
+    private static final Path SNAPSHOT_FILE = Paths.get("library.snap");
+    private static final Path RECORD_FILE = Paths.get("books.dat");
+
+    // Snapshot format used by compaction: text (books.txt/members.txt) or binary (library.snap)
+    private static final boolean BINARY_SNAPSHOTS =
+            "binary".equalsIgnoreCase(System.getProperty("library.snapshot", "text"));
+
+    // Journal tuning, e.g. java -Dlibrary.fsync=always LibrarySystem
+    private static final FsyncPolicy FSYNC_POLICY =
+            FsyncPolicy.valueOf(System.getProperty("library.fsync", "batch").toUpperCase(Locale.ROOT));
+    private static final int GROUP_COMMIT_SIZE = Integer.getInteger("library.groupCommit", 32);
+    private static final int GROUP_COMMIT_MILLIS = Integer.getInteger("library.groupCommitMillis", 50);
+    private static final int COMPACT_EVERY = Integer.getInteger("library.compactEvery", 10_000);
+    private static final int ID_BLOCK = Integer.getInteger("library.idBlock", 1000);
+    private static final int DEFAULT_PORT = 7070;
+    private static final int PAGE_SIZE = 50;
+    private static final int LOAN_DAYS = Integer.getInteger("library.loanDays", 14);
+    // Hot Book objects kept on the heap; 0 keeps every book on the heap (no record file)
+    private static final int HOT_BOOKS = Integer.getInteger("library.hotBooks", 0);
 
     // Domain classes
     public static class Book implements Comparable<Book> {
+        private static final VarHandle VERSION;
+        private static final VarHandle RECORD_INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+        static {
+            try {
+                VERSION = MethodHandles.lookup().findVarHandle(Book.class, "version", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
         final int bookId;
         String title;
         String author;
         String category;
-        boolean isIssued;
+        // Counts issue/return transitions: even = on the shelf, odd = issued.
+        // Only changed by compare-and-set, so two desks can never issue the same copy.
+        private volatile int version;
+        // Set when the book is stored in a TieredBookStore: the version then lives in the
+        // mmap record, so every copy of the book and its evicted self share one state
+        private ByteBuffer record;
+        private int versionOffset;
+
+        public Book(int bookId, String title, String author, String category, boolean isIssued) {
+            this.bookId = bookId;
+            this.title = title;
+            this.author = author;
+            this.category = category;
+            this.version = isIssued ? 1 : 0;
+        }
+
+        public Book(int bookId, String title, String author, String category) {
+            this(bookId, title, author, category, false);
+        }
+
+        public boolean isIssued() { return (version() & 1) != 0; }
+
+        int version() {
+            return record == null ? version : (int) RECORD_INT.getVolatile(record, versionOffset);
+        }
+
+        private boolean casVersion(int expected, int next) {
+            return record == null
+                    ? VERSION.compareAndSet(this, expected, next)
+                    : RECORD_INT.compareAndSet(record, versionOffset, expected, next);
+        }
+
+        // Move the version into a store record; called before the book is published
+        void bind(ByteBuffer record, int versionOffset) {
+            this.record = record;
+            this.versionOffset = versionOffset;
+        }
+
+        public void markIssued() { tryIssue(); }
+        public void markReturned() { tryReturn(); }
+
+        // Shelf -> issued. Returns the new version, or -1 if the book was already issued.
+        int tryIssue() {
+            int v;
+            do {
+                v = version();
+                if ((v & 1) != 0) return -1;
+            } while (!casVersion(v, v + 1));
+            return v + 1;
+        }
+
+        // Issued -> shelf. Returns the new version, or -1 if the book was not issued.
+        int tryReturn() {
+            int v;
+            do {
+                v = version();
+                if ((v & 1) == 0) return -1;
+            } while (!casVersion(v, v + 1));
+            return v + 1;
+        }
+
+        // Journal replay: adopt a logged transition unless a later one was already applied
+        void restoreVersion(int logged) {
+            int v;
+            do {
+                v = version();
+                if (logged <= v) return;
+            } while (!casVersion(v, logged));
+        }
+
+        public void displayBookDetails() {
+            System.out.println(details());
+        }
+
+        public String details() {
+            return String.format("ID: %d | Title: %s | Author: %s | Category: %s | Issued: %b",
+                    bookId, title, author, category, isIssued());
+        }
+
+        @Override
+        public int compareTo(Book o) {
+            return this.title.compareToIgnoreCase(o.title);
+        }
+    }
+
+    public static class Member {
+        final int memberId;
+        String name;
+
+        public Member(int memberId, String name) {
+            this.memberId = memberId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * When the journal calls fsync.
+     * ALWAYS - after every record (slowest, nothing acknowledged is ever lost)
+     * BATCH  - once per group of records, at most a few ms after a record is written, and on
+     *          close (a power cut may lose the records of the last few ms)
+     * NEVER  - leave it to the operating system
+     */
+    public enum FsyncPolicy { ALWAYS, BATCH, NEVER }
+
+    /**
+     * Append-only change log. Every record is one line in the same simple CSV style
+     * as the data files, prefixed with a record type:
+     *   B,id,title,author,category,isIssued   (book added)
+     *   M,id,name                             (member added)
+     *   I,bookId,version,memberId,issuedAt,dueAt   (book issued; times in epoch ms)
+     *   R,bookId,version                      (book returned)
+     * Records describe absolute state, so replaying one twice is harmless. Issue/return
+     * records carry the book's transition count, so records that concurrent desks wrote
+     * out of order still replay to the latest state.
+     */
+    public static class Journal implements Closeable {
+        private final FileChannel channel;
+        private final FsyncPolicy policy;
+        private final int groupCommitSize;
+        private final ScheduledExecutorService flusher; // BATCH only: syncs a group that never fills
+        private int unsynced;     // records written but not yet forced to disk
+        private int records;      // records since the last compaction
+
+        // records: the number already in the file (replayed at startup), so compaction
+        // still happens on time after a restart. A BATCH group is forced once it holds
+        // groupCommitSize records or groupCommitMillis after it was started, whichever is first.
+        public Journal(Path path, FsyncPolicy policy, int groupCommitSize, int groupCommitMillis, int records)
+                throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            this.policy = policy;
+            this.groupCommitSize = Math.max(1, groupCommitSize);
+            this.records = records;
+            if (policy == FsyncPolicy.BATCH) {
+                long every = Math.max(1, groupCommitMillis);
+                flusher = Executors.newSingleThreadScheduledExecutor(daemon("journal-sync"));
+                flusher.scheduleWithFixedDelay(this::flush, every, every, TimeUnit.MILLISECONDS);
+            } else {
+                flusher = null;
+            }
+        }
+
+        private synchronized void flush() {
+            if (unsynced == 0 || !channel.isOpen()) return;
+            try {
+                sync();
+            } catch (IOException e) {
+                System.err.println("Error syncing journal: " + e.getMessage());
+            }
+        }
+
+        public synchronized void append(String record) throws IOException {
+            ByteBuffer buf = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) channel.write(buf);
+            records++;
+            unsynced++;
+            if (policy == FsyncPolicy.ALWAYS || (policy == FsyncPolicy.BATCH && unsynced >= groupCommitSize)) {
+                sync();
+            }
+        }
+
+        // Force pending records to disk (group commit)
+        public synchronized void sync() throws IOException {
+            if (unsynced > 0 && policy != FsyncPolicy.NEVER) channel.force(false);
+            unsynced = 0;
+        }
+
+        public synchronized int recordCount() { return records; }
+
+        // Drop all records; only call once they are folded into a snapshot
+        public synchronized void reset() throws IOException {
+            channel.truncate(0);
+            channel.force(true);
+            records = 0;
+            unsynced = 0;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (flusher != null) flusher.shutdown();
+            sync();
+            channel.close();
+        }
+    }
+
+    static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    // One issued copy: who has it and until when (epoch milliseconds)
+    public record Loan(int bookId, int memberId, long issuedAt, long dueAt, int version) {
+        public String details() {
+            return String.format("Book %d | Member %d | Issued: %s | Due: %s",
+                    bookId, memberId, day(issuedAt), day(dueAt));
+        }
+
+        private static LocalDate day(long millis) {
+            return LocalDate.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+        }
+    }
+
+    /**
+     * Open loans, indexed by book, by member and by due date. The due-date heap removes
+     * returned loans lazily, so an overdue sweep costs O(k log n) for k overdue loans.
+     * Each loan carries the book's transition count (see Book.version): a loan is only
+     * opened while the book is still at that version and only closed by a later one, so
+     * concurrent issue/return calls and out-of-order journal replay agree on the result.
+     */
+    public static class LoanLedger {
+        private final Map<Integer, Loan> byBook = new ConcurrentHashMap<>();
+        private final Map<Integer, Set<Integer>> byMember = new ConcurrentHashMap<>();
+        private final PriorityQueue<Loan> byDue = new PriorityQueue<>(Comparator.comparingLong(Loan::dueAt));
+
+        // Record a loan for the issue that moved the book to loan.version()
+        public void open(Book book, Loan loan) {
+            boolean[] opened = new boolean[1];
+            byBook.compute(loan.bookId(), (id, cur) -> {
+                if (book.version() != loan.version()) return cur; // already returned again
+                if (cur != null && cur.version() >= loan.version()) return cur;
+                if (cur != null) unlink(cur);
+                byMember.compute(loan.memberId(), (m, ids) -> {
+                    Set<Integer> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    set.add(id);
+                    return set;
+                });
+                opened[0] = true;
+                return loan;
+            });
+            if (opened[0]) {
+                synchronized (byDue) {
+                    byDue.add(loan);
+                    // drop returned loans that are not due yet once they outnumber open ones
+                    if (byDue.size() > 2 * byBook.size() + 64) byDue.removeIf(l -> !isOpen(l));
+                }
+            }
+        }
+
+        // Close the loan ended by the return that moved the book to returnVersion
+        public void close(int bookId, int returnVersion) {
+            byBook.computeIfPresent(bookId, (id, cur) -> {
+                if (cur.version() >= returnVersion) return cur;
+                unlink(cur);
+                return null;
+            });
+        }
+
+        private void unlink(Loan loan) {
+            byMember.computeIfPresent(loan.memberId(), (m, ids) -> {
+                ids.remove(loan.bookId());
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+
+        private boolean isOpen(Loan loan) {
+            return byBook.get(loan.bookId()) == loan;
+        }
+
+        public Loan loanOf(int bookId) {
+            return byBook.get(bookId);
+        }
+
+        public List<Loan> loansOf(int memberId) {
+            List<Loan> out = new ArrayList<>();
+            for (int bookId : byMember.getOrDefault(memberId, Set.of())) {
+                Loan l = byBook.get(bookId);
+                if (l != null && l.memberId() == memberId) out.add(l);
+            }
+            out.sort(Comparator.comparingLong(Loan::dueAt));
+            return out;
+        }
+
+        // Open loans due before now, earliest first
+        public List<Loan> overdue(long now) {
+            List<Loan> due = new ArrayList<>();
+            synchronized (byDue) {
+                while (!byDue.isEmpty() && byDue.peek().dueAt() < now) {
+                    Loan l = byDue.poll();
+                    if (isOpen(l)) due.add(l);
+                }
+                byDue.addAll(due); // still open, so keep them for the next sweep
+            }
+            return due;
+        }
+
+        public Collection<Loan> all() {
+            return byBook.values();
+        }
+    }
+
+    /**
+     * Inverted index over normalized title, author and category tokens.
+     * Query syntax (case and accents are ignored):
+     *   dune herbert          both terms must match (AND)
+     *   dune OR foundation    either side may match
+     *   author:herbert        restrict a term to one field (title:, author:, category:)
+     *   found*                prefix match
+     * Results are ranked by how many terms matched and where (title > author > category).
+     */
+    public static class BookIndex {
+        enum Field {
+            TITLE(3), AUTHOR(2), CATEGORY(1);
+
+            final int weight;
+            Field(int weight) { this.weight = weight; }
+        }
+
+        private record Term(Field field, String token, boolean prefix) { }
+
+        // field -> token -> ids of books containing that token (sorted map for prefix scans)
+        private final Map<Field, NavigableMap<String, Set<Integer>>> postings = new EnumMap<>(Field.class);
+        // searches run in parallel; adding a book briefly excludes them
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        public BookIndex() {
+            for (Field f : Field.values()) postings.put(f, new TreeMap<>());
+        }
+
+        public void add(Book b) {
+            lock.writeLock().lock();
+            try {
+                index(Field.TITLE, b.title, b.bookId);
+                index(Field.AUTHOR, b.author, b.bookId);
+                index(Field.CATEGORY, b.category, b.bookId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        public void remove(Book b) {
+            lock.writeLock().lock();
+            try {
+                unindex(Field.TITLE, b.title, b.bookId);
+                unindex(Field.AUTHOR, b.author, b.bookId);
+                unindex(Field.CATEGORY, b.category, b.bookId);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void index(Field f, String text, int id) {
+            for (String t : tokenize(text)) {
+                postings.get(f).computeIfAbsent(t, k -> new HashSet<>()).add(id);
+            }
+        }
+
+        private void unindex(Field f, String text, int id) {
+            NavigableMap<String, Set<Integer>> map = postings.get(f);
+            for (String t : tokenize(text)) {
+                Set<Integer> ids = map.get(t);
+                if (ids == null) continue;
+                ids.remove(id);
+                if (ids.isEmpty()) map.remove(t);
+            }
+        }
+
+        // Lower-case, strip accents and split on anything that is not a letter or digit
+        static List<String> tokenize(String text) {
+            List<String> tokens = new ArrayList<>();
+            if (text == null || text.isEmpty()) return tokens;
+            String s = normalize(text);
+            int start = -1;
+            for (int i = 0; i <= s.length(); i++) {
+                boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+                if (word && start < 0) {
+                    start = i;
+                } else if (!word && start >= 0) {
+                    tokens.add(s.substring(start, i));
+                    start = -1;
+                }
+            }
+            return tokens;
+        }
+
+        private static String normalize(String text) {
+            String s = text.toLowerCase(Locale.ROOT);
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) > 0x7f) {
+                    return Normalizer.normalize(s, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+                }
+            }
+            return s; // plain ASCII needs no decomposition
+        }
+
+        // Book ids matching the query, best match first
+        public List<Integer> search(String query) {
+            List<List<Term>> groups = parse(query);
+            Map<Integer, Integer> scores = new HashMap<>();
+            lock.readLock().lock();
+            try {
+                collect(groups, scores);
+            } finally {
+                lock.readLock().unlock();
+            }
+            List<Integer> ranked = new ArrayList<>(scores.keySet());
+            ranked.sort((a, b) -> {
+                int c = Integer.compare(scores.get(b), scores.get(a));
+                return c != 0 ? c : Integer.compare(a, b);
+            });
+            return ranked;
+        }
+
+        private void collect(List<List<Term>> groups, Map<Integer, Integer> scores) {
+            for (List<Term> group : groups) {
+                Map<Integer, Integer> groupScores = null;
+                for (Term term : group) {
+                    Map<Integer, Integer> hits = match(term);
+                    if (groupScores == null) {
+                        groupScores = hits;
+                    } else {
+                        groupScores.keySet().retainAll(hits.keySet());
+                        groupScores.replaceAll((id, score) -> score + hits.get(id));
+                    }
+                    if (groupScores.isEmpty()) break; // AND can no longer match
+                }
+                if (groupScores != null) groupScores.forEach((id, score) -> scores.merge(id, score, Math::max));
+            }
+        }
+
+        // Split into OR groups of AND-ed terms
+        private static List<List<Term>> parse(String query) {
+            List<List<Term>> groups = new ArrayList<>();
+            List<Term> current = new ArrayList<>();
+            for (String raw : query.trim().split("\\s+")) {
+                if (raw.isEmpty()) continue;
+                if (raw.equals("OR")) {
+                    if (!current.isEmpty()) groups.add(current);
+                    current = new ArrayList<>();
+                    continue;
+                }
+                Field field = null;
+                int colon = raw.indexOf(':');
+                if (colon > 0) {
+                    try {
+                        field = Field.valueOf(raw.substring(0, colon).toUpperCase(Locale.ROOT));
+                        raw = raw.substring(colon + 1);
+                    } catch (IllegalArgumentException ignored) {
+                        // not a field name, treat the colon as part of the text
+                    }
+                }
+                boolean prefix = raw.endsWith("*");
+                if (prefix) raw = raw.substring(0, raw.length() - 1);
+                // a term like "sci-fi" becomes several AND-ed tokens; only the last keeps the prefix flag
+                List<String> tokens = tokenize(raw);
+                for (int i = 0; i < tokens.size(); i++) {
+                    current.add(new Term(field, tokens.get(i), prefix && i == tokens.size() - 1));
+                }
+            }
+            if (!current.isEmpty()) groups.add(current);
+            return groups;
+        }
+
+        // Matching book ids with their score for one term
+        private Map<Integer, Integer> match(Term term) {
+            Map<Integer, Integer> hits = new HashMap<>();
+            for (Field f : Field.values()) {
+                if (term.field() != null && term.field() != f) continue;
+                NavigableMap<String, Set<Integer>> map = postings.get(f);
+                if (term.prefix()) {
+                    // prefix hits rank below whole-word hits
+                    for (Map.Entry<String, Set<Integer>> e
+                            : map.subMap(term.token(), true, term.token() + Character.MAX_VALUE, false).entrySet()) {
+                        int w = e.getKey().equals(term.token()) ? f.weight * 2 : f.weight;
+                        for (Integer id : e.getValue()) hits.merge(id, w, Math::max);
+                    }
+                } else {
+                    Set<Integer> ids = map.get(term.token());
+                    if (ids != null) for (Integer id : ids) hits.merge(id, f.weight * 2, Integer::sum);
+                }
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * Catalog kept sorted by title, author and category as books are added, so listing a
+     * page never copies or re-sorts the whole catalog. Each order is a treap (randomized
+     * balanced tree) whose nodes know their subtree size, so jumping to page k or resuming
+     * after a cursor costs O(log n + page size). Ties are broken by book id, and text is
+     * compared ignoring case, the same as Book.compareTo.
+     * With a KeySource the nodes hold only book ids and read keys from the store when
+     * comparing, so sort keys of cold books do not stay on the heap.
+     */
+    public static class SortedCatalog {
+        public interface KeySource {
+            String key(Order order, int bookId);
+        }
+
+        public enum Order {
+            TITLE, AUTHOR, CATEGORY;
+
+            String key(Book b) {
+                return switch (this) {
+                    case TITLE -> b.title;
+                    case AUTHOR -> b.author;
+                    case CATEGORY -> b.category;
+                };
+            }
+        }
+
+        // Position just after the last book of a page; pass it back to continue from there
+        public record Cursor(Order order, String key, int bookId) { }
+
+        public record Page(List<Integer> bookIds, Cursor next, int total) { }
+
+        private static final class Node {
+            final String key; // null when keys come from the KeySource
+            final int id;
+            final int priority = ThreadLocalRandom.current().nextInt();
+            Node left, right;
+            int size = 1;
+
+            Node(String key, int id) {
+                this.key = key;
+                this.id = id;
+            }
+        }
+
+        private final Map<Order, Node> roots = new EnumMap<>(Order.class);
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final KeySource source;
+
+        public SortedCatalog() {
+            this(null);
+        }
+
+        public SortedCatalog(KeySource source) {
+            this.source = source;
+        }
+
+        public void add(Book b) {
+            lock.writeLock().lock();
+            try {
+                for (Order o : Order.values()) {
+                    roots.put(o, insert(o, roots.get(o), new Node(source == null ? nonNull(o.key(b)) : null, b.bookId),
+                            nonNull(o.key(b))));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Remove a book; with a KeySource, call this before the store forgets the book's old keys
+        public void remove(Book b) {
+            lock.writeLock().lock();
+            try {
+                for (Order o : Order.values()) roots.put(o, delete(o, roots.get(o), nonNull(o.key(b)), b.bookId));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private String keyOf(Order o, Node n) {
+            return n.key != null ? n.key : nonNull(source.key(o, n.id));
+        }
+
+        private static String nonNull(String s) { return s == null ? "" : s; }
+
+        public int size() {
+            lock.readLock().lock();
+            try {
+                return size(roots.get(Order.TITLE));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // Page number pageNo (from 0) of pageSize books
+        public Page page(Order order, int pageNo, int pageSize) {
+            lock.readLock().lock();
+            try {
+                return slice(order, (long) pageNo * pageSize, pageSize);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // The pageSize books that follow the cursor (null cursor = from the start)
+        public Page pageAfter(Cursor cursor, Order order, int pageSize) {
+            lock.readLock().lock();
+            try {
+                long from = cursor == null ? 0 : countUpTo(order, roots.get(order), cursor.key(), cursor.bookId());
+                return slice(order, from, pageSize);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private Page slice(Order order, long from, int count) {
+            Node root = roots.get(order);
+            List<Integer> ids = new ArrayList<>(Math.max(0, Math.min(count, size(root))));
+            Node[] last = new Node[1];
+            if (from < size(root)) collect(root, (int) from, count, ids, last);
+            Cursor next = last[0] == null ? null : new Cursor(order, keyOf(order, last[0]), last[0].id);
+            return new Page(ids, next, size(root));
+        }
+
+        // In-order walk that skips whole subtrees before `from` and stops after `count` nodes
+        private static void collect(Node n, int from, int count, List<Integer> out, Node[] last) {
+            if (n == null || out.size() >= count) return;
+            int leftSize = size(n.left);
+            if (from < leftSize) collect(n.left, from, count, out, last);
+            if (out.size() >= count) return;
+            if (from <= leftSize) {
+                out.add(n.id);
+                last[0] = n;
+            }
+            collect(n.right, Math.max(0, from - leftSize - 1), count, out, last);
+        }
+
+        // Number of nodes ordered at or before (key, id)
+        private long countUpTo(Order o, Node n, String key, int id) {
+            long count = 0;
+            while (n != null) {
+                if (compare(keyOf(o, n), n.id, key, id) <= 0) {
+                    count += size(n.left) + 1;
+                    n = n.right;
+                } else {
+                    n = n.left;
+                }
+            }
+            return count;
+        }
+
+        private static int compare(String k1, int id1, String k2, int id2) {
+            int c = String.CASE_INSENSITIVE_ORDER.compare(k1, k2);
+            return c != 0 ? c : Integer.compare(id1, id2);
+        }
+
+        private static int size(Node n) { return n == null ? 0 : n.size; }
+
+        private static Node update(Node n) {
+            n.size = size(n.left) + size(n.right) + 1;
+            return n;
+        }
+
+        private Node insert(Order o, Node n, Node x, String xKey) {
+            if (n == null) return x;
+            if (compare(xKey, x.id, keyOf(o, n), n.id) < 0) {
+                n.left = insert(o, n.left, x, xKey);
+                if (n.left.priority > n.priority) n = rotateRight(n);
+            } else {
+                n.right = insert(o, n.right, x, xKey);
+                if (n.right.priority > n.priority) n = rotateLeft(n);
+            }
+            return update(n);
+        }
+
+        private Node delete(Order o, Node n, String key, int id) {
+            if (n == null) return null;
+            int c = compare(key, id, keyOf(o, n), n.id);
+            if (c < 0) {
+                n.left = delete(o, n.left, key, id);
+            } else if (c > 0) {
+                n.right = delete(o, n.right, key, id);
+            } else {
+                return merge(n.left, n.right);
+            }
+            return update(n);
+        }
+
+        // Join two treaps where every key in a precedes every key in b
+        private static Node merge(Node a, Node b) {
+            if (a == null) return b;
+            if (b == null) return a;
+            if (a.priority > b.priority) {
+                a.right = merge(a.right, b);
+                return update(a);
+            }
+            b.left = merge(a, b.left);
+            return update(b);
+        }
+
+        private static Node rotateRight(Node n) {
+            Node l = n.left;
+            n.left = l.right;
+            l.right = update(n);
+            return update(l);
+        }
+
+        private static Node rotateLeft(Node n) {
+            Node r = n.right;
+            n.right = r.left;
+            r.left = update(n);
+            return update(r);
+        }
+    }
+
+    /**
+     * Number of books and issued books per category and per author, kept up to date in O(1)
+     * as books are added, issued and returned. verify() recounts everything with a parallel
+     * scan and reports (and repairs) any counter that drifted.
+     */
+    public static class CatalogStats {
+        public enum Field {
+            CATEGORY, AUTHOR;
+
+            String of(Book b) {
+                String v = this == CATEGORY ? b.category : b.author;
+                return v == null ? "" : v;
+            }
+        }
+
+        public record Entry(String name, long books, long issued) { }
+
+        private static final class Counts {
+            final LongAdder books = new LongAdder();
+            final LongAdder issued = new LongAdder();
+        }
+
+        private final Map<Field, Map<String, Counts>> counts = new EnumMap<>(Field.class);
+
+        public CatalogStats() {
+            for (Field f : Field.values()) counts.put(f, new ConcurrentHashMap<>());
+        }
+
+        public void added(Book b) { adjust(b, 1, b.isIssued() ? 1 : 0); }
+        public void removed(Book b) { adjust(b, -1, b.isIssued() ? -1 : 0); }
+        public void issued(Book b) { adjust(b, 0, 1); }
+        public void returned(Book b) { adjust(b, 0, -1); }
+
+        private void adjust(Book b, int books, int issued) {
+            for (Field f : Field.values()) {
+                Counts c = counts.get(f).computeIfAbsent(f.of(b), k -> new Counts());
+                if (books != 0) c.books.add(books);
+                if (issued != 0) c.issued.add(issued);
+            }
+        }
+
+        // The n largest groups, by number of books or by number issued
+        public List<Entry> top(Field field, int n, boolean byIssued) {
+            Comparator<Entry> order = byIssued
+                    ? Comparator.comparingLong(Entry::issued).thenComparingLong(Entry::books)
+                    : Comparator.comparingLong(Entry::books).thenComparingLong(Entry::issued);
+            PriorityQueue<Entry> best = new PriorityQueue<>(order); // smallest of the current top n first
+            for (Map.Entry<String, Counts> e : counts.get(field).entrySet()) {
+                Entry entry = new Entry(e.getKey(), e.getValue().books.sum(), e.getValue().issued.sum());
+                if (entry.books() == 0) continue;
+                best.add(entry);
+                if (best.size() > n) best.poll();
+            }
+            List<Entry> out = new ArrayList<>(best);
+            out.sort(order.reversed());
+            return out;
+        }
+
+        /**
+         * Recount from a full parallel scan and compare with the live counters. Mismatched
+         * counters are replaced by the recount. Returns one line per mismatch.
+         * Changes must be paused while this runs.
+         */
+        public List<String> verify(Collection<Book> books) {
+            Map<Field, Map<String, long[]>> actual = new EnumMap<>(Field.class);
+            for (Field f : Field.values()) {
+                actual.put(f, books.parallelStream().collect(Collectors.toConcurrentMap(
+                        f::of, b -> new long[] {1, b.isIssued() ? 1 : 0},
+                        (x, y) -> new long[] {x[0] + y[0], x[1] + y[1]})));
+            }
+            List<String> problems = new ArrayList<>();
+            for (Field f : Field.values()) {
+                Map<String, Counts> live = counts.get(f);
+                Map<String, long[]> real = actual.get(f);
+                Set<String> names = new HashSet<>(live.keySet());
+                names.addAll(real.keySet());
+                for (String name : names) {
+                    long[] want = real.getOrDefault(name, new long[2]);
+                    Counts c = live.computeIfAbsent(name, k -> new Counts());
+                    long counted = c.books.sum(), issued = c.issued.sum();
+                    if (counted == want[0] && issued == want[1]) continue;
+                    problems.add(String.format("%s '%s': counted %d books/%d issued, scan found %d/%d",
+                            f, name, counted, issued, want[0], want[1]));
+                    c.books.add(want[0] - counted);
+                    c.issued.add(want[1] - issued);
+                }
+            }
+            return problems;
+        }
+    }
+
+    // Where Book objects live. Every lookup of a book by id goes through here.
+    public interface BookStore {
+        Book get(int id);
+
+        // Like get, but without touching any cache or statistics (used by writers)
+        default Book peek(int id) { return get(id); }
+
+        // Add or replace a book
+        void put(Book b);
+
+        // Every stored book; iterating a tiered store does not disturb its cache
+        Collection<Book> values();
+
+        default boolean isEmpty() { return values().isEmpty(); }
+
+        String stats();
+
+        default void close() { }
+    }
+
+    // Every book as a heap object (the default)
+    public static class HeapBookStore implements BookStore {
+        private final Map<Integer, Book> books = new ConcurrentHashMap<>();
+
+        public Book get(int id) { return books.get(id); }
+        public void put(Book b) { books.put(b.bookId, b); }
+        public Collection<Book> values() { return books.values(); }
+        public String stats() { return "Book store: all " + books.size() + " books on the heap"; }
+    }
+
+    /**
+     * Books kept as fixed-size records in a memory-mapped file (books.dat), keyed by id:
+     * record i holds book id i + 1. Only the most recently used `capacity` books are
+     * kept as Book objects (LRU). Materialized books read their issue state straight from
+     * the record, so evicting one never loses an issue or return. Books whose id is below 1
+     * or whose text does not fit the record slots stay on the heap ("pinned").
+     * Records are read without locking. A rewrite makes the record's sequence number odd
+     * and then even again (a seqlock), and readers retry when it changed under them, so
+     * they never mix the title of one write with the author of another.
+     * Only Book objects are tiered: BookIndex still keeps a boxed id per token per book on
+     * the heap, and CatalogStats a pair of counters per author and per category.
+     * The file is a cache rebuilt at startup; snapshots and the journal stay the source of truth.
+     */
+    public static class TieredBookStore implements BookStore, SortedCatalog.KeySource {
+        private static final int RECORD_SIZE = 256;
+        private static final int SEGMENT_RECORDS = 1 << 16;                 // 16 MB per mapping
+        private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+        // Record layout: id, version, sequence, then each text as a 2-byte length and a fixed slot
+        private static final int ID = 0, VERSION = 4, SEQ = 8, TITLE = 12, AUTHOR = 160, CATEGORY = 224;
+        private static final int TITLE_MAX = 146, AUTHOR_MAX = 62, CATEGORY_MAX = 30;
+
+        private final FileChannel channel;
+        private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+        private final int capacity;
+        private final LinkedHashMap<Integer, Book> hot; // access order = LRU; guarded by itself
+        private final Map<Integer, Book> pinned = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        public TieredBookStore(Path file, int capacity) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.capacity = Math.max(1, capacity);
+            this.hot = new LinkedHashMap<>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, Book> eldest) {
+                    if (size() <= TieredBookStore.this.capacity) return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        public Book get(int id) {
+            Book b;
+            synchronized (hot) {
+                b = hot.get(id);
+            }
+            if (b != null) {
+                hits.increment();
+                return b;
+            }
+            b = pinned.get(id);
+            if (b != null) return b;
+
+            misses.increment();
+            b = read(id);
+            if (b == null) return null;
+            synchronized (hot) {
+                Book raced = hot.putIfAbsent(id, b);
+                return raced != null ? raced : b;
+            }
+        }
+
+        @Override
+        public Book peek(int id) {
+            Book b = pinned.get(id);
+            return b != null ? b : read(id);
+        }
+
+        // New books are not cached; the hot set is built by reads
+        @Override
+        public synchronized void put(Book b) {
+            boolean existed = peek(b.bookId) != null;
+            byte[] title = utf8(b.title), author = utf8(b.author), category = utf8(b.category);
+            boolean fits = b.bookId >= 1 && title.length <= TITLE_MAX
+                    && author.length <= AUTHOR_MAX && category.length <= CATEGORY_MAX;
+            if (fits) {
+                ByteBuffer seg = segment(b.bookId, true);
+                int base = base(b.bookId);
+                int seq = (int) Book.RECORD_INT.getVolatile(seg, base + SEQ);
+                Book.RECORD_INT.setVolatile(seg, base + SEQ, seq + 1); // odd: being rewritten
+                VarHandle.storeStoreFence();
+                seg.putInt(base + ID, b.bookId);
+                seg.putInt(base + VERSION, b.version());
+                putText(seg, base + TITLE, title);
+                putText(seg, base + AUTHOR, author);
+                putText(seg, base + CATEGORY, category);
+                Book.RECORD_INT.setVolatile(seg, base + SEQ, seq + 2);
+                pinned.remove(b.bookId);
+                b.bind(seg, base + VERSION);
+            } else {
+                ByteBuffer seg = segment(b.bookId, false);
+                if (seg != null) seg.putInt(base(b.bookId) + ID, 0);
+                pinned.put(b.bookId, b);
+            }
+            synchronized (hot) {
+                hot.remove(b.bookId); // drop a stale copy of a replaced book
+            }
+            if (!existed) size.incrementAndGet();
+        }
+
+        // Sort key straight from the record, without materializing or caching the book
+        @Override
+        public String key(SortedCatalog.Order order, int bookId) {
+            Book p = pinned.get(bookId);
+            if (p != null) return order.key(p);
+            ByteBuffer seg = segment(bookId, false);
+            if (seg == null) return "";
+            int base = base(bookId);
+            while (true) {
+                int seq = beginRead(seg, base);
+                String key = switch (order) {
+                    case TITLE -> getText(seg, base + TITLE, TITLE_MAX);
+                    case AUTHOR -> getText(seg, base + AUTHOR, AUTHOR_MAX);
+                    case CATEGORY -> getText(seg, base + CATEGORY, CATEGORY_MAX);
+                };
+                if (endRead(seg, base, seq)) return key;
+            }
+        }
+
+        @Override
+        public Collection<Book> values() {
+            return new AbstractCollection<>() {
+                @Override
+                public int size() { return size.get(); }
+
+                @Override
+                public Iterator<Book> iterator() { return scan(); }
+            };
+        }
+
+        // Pinned books first, then every record in id order
+        private Iterator<Book> scan() {
+            Iterator<Book> heap = new ArrayList<>(pinned.values()).iterator();
+            return new Iterator<>() {
+                private long nextId = 1;
+                private Book next = advance();
+
+                private Book advance() {
+                    if (heap.hasNext()) return heap.next();
+                    MappedByteBuffer[] segs = segments;
+                    long end = (long) segs.length * SEGMENT_RECORDS;
+                    while (nextId <= end) {
+                        int id = (int) nextId++;
+                        Book b = read(id);
+                        if (b != null) return b;
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() { return next != null; }
+
+                @Override
+                public Book next() {
+                    if (next == null) throw new NoSuchElementException();
+                    Book b = next;
+                    next = advance();
+                    return b;
+                }
+            };
+        }
+
+        private Book read(int id) {
+            ByteBuffer seg = segment(id, false);
+            if (seg == null) return null;
+            int base = base(id);
+            while (true) {
+                int seq = beginRead(seg, base);
+                boolean present = seg.getInt(base + ID) == id;
+                String title = present ? getText(seg, base + TITLE, TITLE_MAX) : null;
+                String author = present ? getText(seg, base + AUTHOR, AUTHOR_MAX) : null;
+                String category = present ? getText(seg, base + CATEGORY, CATEGORY_MAX) : null;
+                if (!endRead(seg, base, seq)) continue; // rewritten while we read it
+                if (!present) return null;
+                Book b = new Book(id, title, author, category);
+                b.bind(seg, base + VERSION);
+                return b;
+            }
+        }
+
+        // Seqlock read side: wait out a rewrite in progress and return the sequence number
+        private static int beginRead(ByteBuffer seg, int base) {
+            int seq;
+            while (((seq = (int) Book.RECORD_INT.getAcquire(seg, base + SEQ)) & 1) != 0) {
+                Thread.onSpinWait();
+            }
+            return seq;
+        }
+
+        // True if the record was not rewritten since beginRead returned seq
+        private static boolean endRead(ByteBuffer seg, int base, int seq) {
+            VarHandle.loadLoadFence();
+            return (int) Book.RECORD_INT.getVolatile(seg, base + SEQ) == seq;
+        }
+
+        private static int base(int id) {
+            return ((id - 1) % SEGMENT_RECORDS) * RECORD_SIZE;
+        }
+
+        // Mapping holding the record for id; grows the file when create is set
+        private MappedByteBuffer segment(int id, boolean create) {
+            if (id < 1) return null;
+            int index = (id - 1) / SEGMENT_RECORDS;
+            MappedByteBuffer[] segs = segments;
+            if (index < segs.length && segs[index] != null) return segs[index];
+            if (!create) return null;
+            synchronized (this) {
+                segs = segments;
+                if (index < segs.length && segs[index] != null) return segs[index];
+                MappedByteBuffer[] grown = Arrays.copyOf(segs, Math.max(segs.length, index + 1));
+                try {
+                    grown[index] = channel.map(FileChannel.MapMode.READ_WRITE, index * SEGMENT_BYTES, SEGMENT_BYTES);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                segments = grown;
+                return grown[index];
+            }
+        }
+
+        private static byte[] utf8(String s) {
+            return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static void putText(ByteBuffer seg, int at, byte[] bytes) {
+            seg.putShort(at, (short) bytes.length);
+            seg.put(at + 2, bytes);
+        }
+
+        // A length outside the slot can only come from a torn read, which endRead rejects
+        private static String getText(ByteBuffer seg, int at, int max) {
+            int length = seg.getShort(at);
+            byte[] bytes = new byte[length < 0 || length > max ? 0 : length];
+            seg.get(at + 2, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        public double hitRate() {
+            long h = hits.sum(), total = h + misses.sum();
+            return total == 0 ? 0 : (double) h / total;
+        }
+
+        @Override
+        public String stats() {
+            int cached;
+            synchronized (hot) {
+                cached = hot.size();
+            }
+            return String.format("Book store: %d books, %d hot of %d | hit rate %.1f%% (%d hits, %d misses) | %d evictions | %d pinned",
+                    size.get(), cached, capacity, hitRate() * 100, hits.sum(), misses.sum(), evictions.sum(), pinned.size());
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing record file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Versioned binary snapshot of the whole catalog, written through a FileChannel with a
+     * direct buffer. Layout (big-endian):
+     *   "LIBS", version
+     *   dictionary: count, then strings   (distinct author and category values)
+     *   books:      count, then id, title, author index, category index, issued flag
+     *   members:    count, then id, name
+     *   loans:      count, then bookId, memberId, issuedAt, dueAt   (version 2 and later)
+     *   CRC32C of everything above
+     * A string is its UTF-8 length followed by the bytes; null is stored as "".
+     */
+    public static class BinarySnapshot {
+        private static final int MAGIC = 0x4C494253; // "LIBS"
+        private static final int VERSION = 2;
+        private static final int BUFFER_SIZE = 1 << 20;
+
+        public record Contents(List<Book> books, List<Member> members, List<Loan> loans) { }
+
+        public static void write(Path file, Collection<Book> books, Collection<Member> members,
+                                 Collection<Loan> loans) throws IOException {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            for (Book b : books) {
+                dictionary.putIfAbsent(nonNull(b.author), dictionary.size());
+                dictionary.putIfAbsent(nonNull(b.category), dictionary.size());
+            }
+            List<Member> memberList = new ArrayList<>(members);
+            List<Loan> loanList = new ArrayList<>(loans);
+
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                Out out = new Out(ch);
+                out.putInt(MAGIC);
+                out.putInt(VERSION);
+                out.putInt(dictionary.size());
+                for (String value : dictionary.keySet()) out.putString(value);
+                out.putInt(books.size());
+                for (Book b : books) {
+                    out.putInt(b.bookId);
+                    out.putString(b.title);
+                    out.putInt(dictionary.get(nonNull(b.author)));
+                    out.putInt(dictionary.get(nonNull(b.category)));
+                    out.putByte(b.isIssued() ? 1 : 0);
+                }
+                out.putInt(memberList.size());
+                for (Member m : memberList) {
+                    out.putInt(m.memberId);
+                    out.putString(m.name);
+                }
+                out.putInt(loanList.size());
+                for (Loan l : loanList) {
+                    out.putInt(l.bookId());
+                    out.putInt(l.memberId());
+                    out.putLong(l.issuedAt());
+                    out.putLong(l.dueAt());
+                }
+                out.finish();
+                ch.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+
+        public static Contents read(Path file) throws IOException {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                In in = new In(ch);
+                if (in.getInt() != MAGIC) throw new IOException(file + " is not a library snapshot");
+                int version = in.getInt();
+                if (version < 1 || version > VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+                String[] dictionary = new String[in.getCount(4)];
+                for (int i = 0; i < dictionary.length; i++) dictionary[i] = in.getString();
+
+                int bookCount = in.getCount(17);
+                List<Book> books = new ArrayList<>(bookCount);
+                for (int i = 0; i < bookCount; i++) {
+                    int id = in.getInt();
+                    String title = in.getString();
+                    String author = dictionary[in.getIndex(dictionary.length)];
+                    String category = dictionary[in.getIndex(dictionary.length)];
+                    books.add(new Book(id, title, author, category, in.getByte() != 0));
+                }
+
+                int memberCount = in.getCount(8);
+                List<Member> members = new ArrayList<>(memberCount);
+                for (int i = 0; i < memberCount; i++) {
+                    members.add(new Member(in.getInt(), in.getString()));
+                }
+
+                List<Loan> loans = new ArrayList<>();
+                if (version >= 2) {
+                    int loanCount = in.getCount(24);
+                    for (int i = 0; i < loanCount; i++) {
+                        loans.add(new Loan(in.getInt(), in.getInt(), in.getLong(), in.getLong(), 0));
+                    }
+                }
+                in.verifyChecksum();
+                return new Contents(books, members, loans);
+            }
+        }
+
+        private static String nonNull(String s) { return s == null ? "" : s; }
+
+        // Buffered output that checksums each buffer-full before it goes to the channel
+        private static final class Out {
+            private final FileChannel ch;
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            private final CRC32C crc = new CRC32C();
+
+            Out(FileChannel ch) { this.ch = ch; }
+
+            void putByte(int v) throws IOException { room(1); buf.put((byte) v); }
+            void putInt(int v) throws IOException { room(4); buf.putInt(v); }
+            void putLong(long v) throws IOException { room(8); buf.putLong(v); }
+
+            void putString(String s) throws IOException {
+                byte[] bytes = nonNull(s).getBytes(StandardCharsets.UTF_8);
+                putInt(bytes.length);
+                for (int off = 0; off < bytes.length; ) {
+                    room(1);
+                    int n = Math.min(buf.remaining(), bytes.length - off);
+                    buf.put(bytes, off, n);
+                    off += n;
+                }
+            }
+
+            private void room(int n) throws IOException {
+                if (buf.remaining() < n) drain();
+            }
+
+            private void drain() throws IOException {
+                buf.flip();
+                crc.update(buf.duplicate());
+                while (buf.hasRemaining()) ch.write(buf);
+                buf.clear();
+            }
+
+            void finish() throws IOException {
+                drain();
+                buf.putInt((int) crc.getValue()).flip();
+                while (buf.hasRemaining()) ch.write(buf);
+            }
+        }
+
+        // Buffered input that checksums bytes as they are consumed
+        private static final class In {
+            private final FileChannel ch;
+            private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            private final CRC32C crc = new CRC32C();
+
+            In(FileChannel ch) {
+                this.ch = ch;
+                buf.limit(0);
+            }
+
+            byte getByte() throws IOException { need(1); return buf.get(); }
+            int getInt() throws IOException { need(4); return buf.getInt(); }
+            long getLong() throws IOException { need(8); return buf.getLong(); }
+
+            // A count of items of at least minBytes each; a count the rest of the file cannot
+            // hold is corruption, caught here rather than by allocating for it
+            int getCount(int minBytes) throws IOException {
+                int n = getInt();
+                if (n < 0) throw new IOException("Corrupt snapshot: negative count");
+                if ((long) n * minBytes > remaining()) throw new IOException("Corrupt snapshot: count " + n + " past end of file");
+                return n;
+            }
+
+            private long remaining() throws IOException {
+                return ch.size() - ch.position() + buf.remaining();
+            }
+
+            int getIndex(int size) throws IOException {
+                int i = getInt();
+                if (i < 0 || i >= size) throw new IOException("Corrupt snapshot: bad dictionary index " + i);
+                return i;
+            }
+
+            String getString() throws IOException {
+                byte[] bytes = new byte[getCount(1)];
+                for (int off = 0; off < bytes.length; ) {
+                    need(1);
+                    int n = Math.min(buf.remaining(), bytes.length - off);
+                    buf.get(bytes, off, n);
+                    off += n;
+                }
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            private void need(int n) throws IOException {
+                if (buf.remaining() >= n) return;
+                checksumConsumed();
+                buf.compact();
+                while (buf.position() < n && ch.read(buf) > 0) {
+                    // keep reading until the value is complete or the file ends
+                }
+                buf.flip();
+                if (buf.remaining() < n) throw new IOException("Corrupt snapshot: unexpected end of file");
+            }
+
+            // Bytes [0, position) have been consumed since the last refill
+            private void checksumConsumed() {
+                ByteBuffer done = buf.duplicate();
+                done.limit(done.position()).position(0);
+                crc.update(done);
+                buf.position(done.limit());
+            }
+
+            void verifyChecksum() throws IOException {
+                checksumConsumed();
+                buf.compact().flip(); // drop the checksummed bytes so the trailer is not counted twice
+                int expected = (int) crc.getValue();
+                if (getInt() != expected) throw new IOException("Corrupt snapshot: checksum mismatch");
+            }
+        }
+    }
+
+    /**
+     * Cold-start loader for books.txt and members.txt. The file is memory-mapped, cut into
+     * newline-aligned chunks, and each chunk is parsed on the fork-join pool by a byte-level
+     * field scanner, so no per-line String, split array or boxed id is created.
+     * Lines are treated like the old BufferedReader/split loop: a line with too few fields
+     * or a bad id is skipped, fields are trimmed, and records come back in file order.
+     */
+    public static class BulkLoader {
+        private static final int MIN_CHUNK = 1 << 20;   // not worth a task below 1 MB
+        private static final int MAX_CHUNK = 1 << 30;   // one mapping must stay under 2 GB
+        static final long BAD_INT = Long.MIN_VALUE;
+
+        // Builds a record from one line, or returns null to skip it
+        public interface LineParser<T> {
+            T parse(Line line);
+        }
+
+        public record Result<T>(List<T> records, long lines, long nanos) {
+            public long linesPerSecond() {
+                return nanos == 0 ? lines : lines * 1_000_000_000L / nanos;
+            }
+
+            public String summary(Path file) {
+                return String.format("Loaded %d of %d lines from %s in %d ms (%,d lines/s)",
+                        records.size(), lines, file, nanos / 1_000_000, linesPerSecond());
+            }
+        }
+
+        /** The trimmed fields of the current line, as offsets into the mapped chunk. */
+        public static final class Line {
+            private final ByteBuffer buf;
+            private final int[] starts;
+            private final int[] ends;
+            private int fields;
+            private byte[] scratch = new byte[256];
+
+            Line(ByteBuffer buf, int maxFields) {
+                this.buf = buf;
+                this.starts = new int[maxFields];
+                this.ends = new int[maxFields];
+            }
+
+            public int fieldCount() { return fields; }
+
+            public String string(int i) {
+                int len = ends[i] - starts[i];
+                if (len > scratch.length) scratch = new byte[Math.max(len, scratch.length * 2)];
+                buf.get(starts[i], scratch, 0, len);
+                return new String(scratch, 0, len, StandardCharsets.UTF_8);
+            }
+
+            // Same values as Integer.parseInt, but returns BAD_INT instead of throwing
+            public long intValue(int i) {
+                int p = starts[i], end = ends[i];
+                if (p == end) return BAD_INT;
+                boolean negative = false;
+                byte first = buf.get(p);
+                if (first == '-' || first == '+') {
+                    negative = first == '-';
+                    if (++p == end) return BAD_INT;
+                }
+                if (end - p > 10) return slowInt(i);
+                long v = 0;
+                for (; p < end; p++) {
+                    int d = buf.get(p) - '0';
+                    if (d < 0 || d > 9) return slowInt(i);
+                    v = v * 10 + d;
+                }
+                if (negative) v = -v;
+                return v < Integer.MIN_VALUE || v > Integer.MAX_VALUE ? BAD_INT : v;
+            }
+
+            // Same values as Long.parseLong, but returns BAD_INT instead of throwing
+            public long longValue(int i) {
+                try {
+                    return Long.parseLong(string(i));
+                } catch (NumberFormatException e) {
+                    return BAD_INT;
+                }
+            }
+
+            // Non-ASCII digits and long zero-padded numbers are rare; let parseInt decide
+            private long slowInt(int i) {
+                try {
+                    return Integer.parseInt(string(i));
+                } catch (NumberFormatException e) {
+                    return BAD_INT;
+                }
+            }
+
+            // Same as Boolean.parseBoolean
+            public boolean isTrue(int i) {
+                if (ends[i] - starts[i] != 4) return false;
+                int p = starts[i];
+                return (buf.get(p) | 0x20) == 't' && (buf.get(p + 1) | 0x20) == 'r'
+                        && (buf.get(p + 2) | 0x20) == 'u' && (buf.get(p + 3) | 0x20) == 'e';
+            }
+        }
+
+        public static <T> Result<T> load(Path file, int minFields, LineParser<T> parser) throws IOException {
+            long start = System.nanoTime();
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                List<long[]> chunks = split(ch);
+                Parsed<T> parsed = chunks.isEmpty() ? new Parsed<>(new ArrayList<>(), 0)
+                        : ForkJoinPool.commonPool().invoke(new ChunkTask<>(ch, chunks, 0, chunks.size(), minFields, parser));
+                return new Result<>(parsed.records, parsed.lines, System.nanoTime() - start);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        // Chunk boundaries [start, end), each ending just after a line break (or at end of file)
+        private static List<long[]> split(FileChannel ch) throws IOException {
+            long size = ch.size();
+            long target = Math.min(MAX_CHUNK,
+                    Math.max(MIN_CHUNK, size / (ForkJoinPool.getCommonPoolParallelism() * 4L)));
+            List<long[]> chunks = new ArrayList<>();
+            ByteBuffer probe = ByteBuffer.allocate(8192);
+            long pos = 0;
+            while (pos < size) {
+                long end = nextLineStart(ch, Math.min(size, pos + target), size, probe);
+                if (end - pos > Integer.MAX_VALUE) throw new IOException("Line too long near offset " + pos);
+                chunks.add(new long[] {pos, end});
+                pos = end;
+            }
+            return chunks;
+        }
+
+        // Line breaks are "\n", "\r" or "\r\n", as in parseChunk; a "\r\n" is never split
+        private static long nextLineStart(FileChannel ch, long from, long size, ByteBuffer probe) throws IOException {
+            long p = from - 1; // the chunk may already end on a newline
+            while (p < size) {
+                probe.clear();
+                int n = ch.read(probe, p);
+                if (n <= 0) break;
+                for (int i = 0; i < n; i++) {
+                    byte b = probe.get(i);
+                    if (b == '\n') return p + i + 1;
+                    if (b == '\r') {
+                        long next = p + i + 1;
+                        boolean lf = i + 1 < n ? probe.get(i + 1) == '\n' : next < size && byteAt(ch, next) == '\n';
+                        return lf ? next + 1 : next;
+                    }
+                }
+                p += n;
+            }
+            return size;
+        }
+
+        private static byte byteAt(FileChannel ch, long pos) throws IOException {
+            ByteBuffer one = ByteBuffer.allocate(1);
+            return ch.read(one, pos) == 1 ? one.get(0) : 0;
+        }
+
+        private record Parsed<T>(List<T> records, long lines) { }
+
+        private static final class ChunkTask<T> extends RecursiveTask<Parsed<T>> {
+            private static final long serialVersionUID = 1L;
+
+            private final FileChannel ch;
+            private final List<long[]> chunks;
+            private final int lo, hi, minFields;
+            private final LineParser<T> parser;
+
+            ChunkTask(FileChannel ch, List<long[]> chunks, int lo, int hi, int minFields, LineParser<T> parser) {
+                this.ch = ch;
+                this.chunks = chunks;
+                this.lo = lo;
+                this.hi = hi;
+                this.minFields = minFields;
+                this.parser = parser;
+            }
+
+            @Override
+            protected Parsed<T> compute() {
+                if (hi - lo == 1) return parseChunk(chunks.get(lo));
+                int mid = (lo + hi) >>> 1;
+                ChunkTask<T> left = new ChunkTask<>(ch, chunks, lo, mid, minFields, parser);
+                left.fork();
+                Parsed<T> right = new ChunkTask<>(ch, chunks, mid, hi, minFields, parser).compute();
+                Parsed<T> first = left.join();
+                first.records.addAll(right.records);
+                return new Parsed<>(first.records, first.lines + right.lines);
+            }
+
+            private Parsed<T> parseChunk(long[] range) {
+                MappedByteBuffer buf;
+                try {
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, range[0], range[1] - range[0]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                List<T> out = new ArrayList<>();
+                Line line = new Line(buf, minFields);
+                int limit = buf.limit();
+                int p = 0;
+                long lines = 0;
+                while (p < limit) {
+                    // Cut the line into fields at commas; only the first minFields are kept
+                    int fields = 0;
+                    int fieldStart = p;
+                    byte b = 0;
+                    for (; p < limit; p++) {
+                        b = buf.get(p);
+                        if (b == '\n' || b == '\r') break;
+                        if (b == ',') {
+                            if (fields < minFields) trim(line, fields, fieldStart, p);
+                            fields++;
+                            fieldStart = p + 1;
+                        }
+                    }
+                    if (fields < minFields) trim(line, fields, fieldStart, p);
+                    fields++;
+                    lines++;
+
+                    if (fields >= minFields) {
+                        line.fields = minFields;
+                        T record = parser.parse(line);
+                        if (record != null) out.add(record);
+                    }
+
+                    // Step over "\n", "\r" or "\r\n", like BufferedReader.readLine
+                    if (p < limit) {
+                        p++;
+                        if (b == '\r' && p < limit && buf.get(p) == '\n') p++;
+                    }
+                }
+                return new Parsed<>(out, lines);
+            }
+
+            // Record field i as [start, end) without the whitespace String.trim would drop
+            private static void trim(Line line, int i, int start, int end) {
+                while (start < end && (line.buf.get(start) & 0xff) <= ' ') start++;
+                while (end > start && (line.buf.get(end - 1) & 0xff) <= ' ') end--;
+                line.starts[i] = start;
+                line.ends[i] = end;
+            }
+        }
+    }
+
+    /**
+     * O(1) id allocation for books and members. Each sequence persists a high-water mark
+     * in sequences.txt one block ahead of what it has handed out, so the file is written
+     * once per block rather than once per insert. A clean shutdown stores the exact next
+     * id; after a crash up to one block of ids is skipped, but an id is never reused.
+     */
+    public static class IdSequences {
+        private final Path file;
+        private final int blockSize;
+        private final Map<String, Sequence> sequences = new TreeMap<>();
+
+        public final class Sequence {
+            private int next = 1;   // next id to hand out
+            private int limit = 1;  // ids below this are covered by the persisted mark
+
+            public int next() {
+                synchronized (IdSequences.this) {
+                    int first = next++;
+                    if (next > limit) {
+                        limit = next + blockSize;
+                        save();
+                    }
+                    return first;
+                }
+            }
 
-        public Book(int bookId, String title, String author, String category, boolean isIssued) {
-            this.bookId = bookId;
-            this.title = title;
-            this.author = author;
-            this.category = category;
-            this.isIssued = isIssued;
+            // Keep the sequence ahead of an id that was loaded from disk
+            public void observe(int id) {
+                synchronized (IdSequences.this) {
+                    if (id >= next) next = id + 1;
+                }
+            }
         }
 
-        public Book(int bookId, String title, String author, String category) {
-            this(bookId, title, author, category, false);
+        public IdSequences(Path file, int blockSize) {
+            this.file = file;
+            this.blockSize = Math.max(1, blockSize);
         }
 
-        public void markIssued() { isIssued = true; }
-        public void markReturned() { isIssued = false; }
+        public synchronized Sequence get(String name) {
+            return sequences.computeIfAbsent(name, k -> new Sequence());
+        }
 
-        public void displayBookDetails() {
-            System.out.printf("ID: %d | Title: %s | Author: %s | Category: %s | Issued: %b%n",
-                    bookId, title, author, category, isIssued);
+        // Resume every sequence from its persisted mark
+        public synchronized void load() {
+            if (!Files.exists(file)) return;
+            Properties props = new Properties();
+            try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                props.load(br);
+            } catch (IOException e) {
+                System.err.println("Error reading sequence file: " + e.getMessage());
+                return;
+            }
+            for (String name : props.stringPropertyNames()) {
+                try {
+                    Sequence seq = get(name);
+                    seq.next = Math.max(seq.next, Integer.parseInt(props.getProperty(name).trim()));
+                    seq.limit = seq.next;
+                } catch (NumberFormatException ignored) {
+                    // skip bad entry; ids seen while loading still keep the sequence safe
+                }
+            }
+        }
+
+        // Persist the reserved marks (written to a temp file and moved into place)
+        public void save() {
+            write(false);
+        }
+
+        // Persist the exact next ids so a clean restart leaves no gap
+        public void close() {
+            write(true);
+        }
+
+        private synchronized void write(boolean exact) {
+            Properties props = new Properties();
+            for (Map.Entry<String, Sequence> e : sequences.entrySet()) {
+                Sequence seq = e.getValue();
+                if (exact) seq.limit = seq.next;
+                props.setProperty(e.getKey(), Integer.toString(Math.max(seq.next, seq.limit)));
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                try (BufferedWriter bw = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                    props.store(bw, "next free ids");
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                System.err.println("Error saving sequence file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Local TCP front end so many desks can share one LibrarySystem. One request per line:
+     *   ADD_BOOK title|author|category   -> OK id
+     *   ADD_MEMBER name                  -> OK id
+     *   ISSUE bookId memberId            -> OK message | ERR message
+     *   RETURN bookId                    -> OK message | ERR message
+     *   SEARCH query                     -> OK n, then n lines of book details
+     *   LIST [TITLE|AUTHOR|CATEGORY] [page] -> OK n total, then n lines of book details
+     *   LOANS memberId                   -> OK n, then n lines of loan details
+     *   OVERDUE                          -> OK n, then n lines of loan details
+     *   STATS                            -> OK book store statistics
+     *   TOP CATEGORY|AUTHOR [n] [ISSUED] -> OK n, then n lines of name|books|issued
+     *   VERIFY_STATS                     -> OK n, then n lines describing repaired counters
+     *   QUIT
+     * Each connection runs on a virtual thread when the JVM has them (Java 21+),
+     * otherwise on a pooled platform thread.
+     */
+    public static class Server implements Closeable {
+        private final LibrarySystem sys;
+        private final ServerSocket socket;
+        private final ExecutorService workers = newWorkerPool();
+
+        public Server(LibrarySystem sys, int port) throws IOException {
+            this.sys = sys;
+            this.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        }
+
+        private static ExecutorService newWorkerPool() {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool();
+            }
+        }
+
+        public int port() { return socket.getLocalPort(); }
+
+        // Accept clients until the server is closed
+        public void serve() {
+            while (!socket.isClosed()) {
+                try {
+                    Socket client = socket.accept();
+                    workers.execute(() -> handle(client));
+                } catch (IOException e) {
+                    if (!socket.isClosed()) System.err.println("Accept failed: " + e.getMessage());
+                }
+            }
+        }
+
+        private void handle(Socket client) {
+            try (client;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter out = new PrintWriter(new BufferedWriter(
+                         new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.trim().equalsIgnoreCase("QUIT")) break;
+                    respond(line.trim(), out);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                System.err.println("Client error: " + e.getMessage());
+            }
+        }
+
+        private void respond(String line, PrintWriter out) {
+            int space = line.indexOf(' ');
+            String cmd = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+            String arg = space < 0 ? "" : line.substring(space + 1).trim();
+            try {
+                switch (cmd) {
+                    case "ADD_BOOK" -> {
+                        String[] f = arg.split("\\|", -1);
+                        if (f.length < 3) {
+                            out.println("ERR usage: ADD_BOOK title|author|category");
+                            return;
+                        }
+                        out.println("OK " + sys.addBook(f[0].trim(), f[1].trim(), f[2].trim()).bookId);
+                    }
+                    case "ADD_MEMBER" -> out.println("OK " + sys.addMember(arg).memberId);
+                    case "ISSUE" -> {
+                        String[] f = arg.split("\\s+");
+                        if (f.length < 2) {
+                            out.println("ERR usage: ISSUE bookId memberId");
+                            return;
+                        }
+                        reply(out, sys.issueBook(Integer.parseInt(f[0]), Integer.parseInt(f[1])));
+                    }
+                    case "RETURN" -> reply(out, sys.returnBook(Integer.parseInt(arg)));
+                    case "SEARCH" -> {
+                        List<Book> found = sys.search(arg);
+                        out.println("OK " + found.size());
+                        for (Book b : found) out.println(b.details());
+                    }
+                    case "LIST" -> {
+                        String[] f = arg.isEmpty() ? new String[0] : arg.split("\\s+");
+                        SortedCatalog.Order order = f.length > 0
+                                ? SortedCatalog.Order.valueOf(f[0].toUpperCase(Locale.ROOT)) : SortedCatalog.Order.TITLE;
+                        int page = f.length > 1 ? Integer.parseInt(f[1]) : 0;
+                        SortedCatalog.Page p = sys.catalog.page(order, Math.max(0, page), PAGE_SIZE);
+                        out.println("OK " + p.bookIds().size() + " " + p.total());
+                        for (Book b : sys.booksOf(p)) out.println(b.details());
+                    }
+                    case "LOANS" -> {
+                        List<Loan> loans = sys.loans.loansOf(Integer.parseInt(arg));
+                        out.println("OK " + loans.size());
+                        for (Loan l : loans) out.println(l.details());
+                    }
+                    case "OVERDUE" -> {
+                        List<Loan> loans = sys.loans.overdue(System.currentTimeMillis());
+                        out.println("OK " + loans.size());
+                        for (Loan l : loans) out.println(l.details());
+                    }
+                    case "STATS" -> out.println("OK " + sys.books.stats());
+                    case "TOP" -> {
+                        String[] f = arg.split("\\s+");
+                        CatalogStats.Field field = CatalogStats.Field.valueOf(f[0].toUpperCase(Locale.ROOT));
+                        int n = f.length > 1 ? Integer.parseInt(f[1]) : 10;
+                        boolean byIssued = f.length > 2 && f[2].equalsIgnoreCase("ISSUED");
+                        List<CatalogStats.Entry> top = sys.stats.top(field, Math.max(1, n), byIssued);
+                        out.println("OK " + top.size());
+                        for (CatalogStats.Entry e : top) out.println(e.name() + "|" + e.books() + "|" + e.issued());
+                    }
+                    case "VERIFY_STATS" -> {
+                        List<String> problems = sys.verifyStats();
+                        out.println("OK " + problems.size());
+                        for (String p : problems) out.println(p);
+                    }
+                    default -> out.println("ERR unknown command " + cmd);
+                }
+            } catch (NumberFormatException e) {
+                out.println("ERR ids must be integers");
+            } catch (IllegalArgumentException e) {
+                out.println("ERR unknown order or field name");
+            }
+        }
+
+        private static void reply(PrintWriter out, Outcome outcome) {
+            out.println((outcome.ok ? "OK " : "ERR ") + outcome.message);
         }
 
         @Override
-        public int compareTo(Book o) {
-            return this.title.compareToIgnoreCase(o.title);
+        public void close() throws IOException {
+            socket.close();
+            workers.shutdown();
         }
     }
 
-    public static class Member {
-        final int memberId;
-        String name;
+    // Result of an issue or return, with the message shown to the desk
+    public enum Outcome {
+        ISSUED(true, "Book issued successfully."),
+        RETURNED(true, "Book returned successfully."),
+        BOOK_NOT_FOUND(false, "Book ID not found."),
+        MEMBER_NOT_FOUND(false, "Member ID not found."),
+        ALREADY_ISSUED(false, "Book is already issued."),
+        NOT_ISSUED(false, "Book is not currently issued.");
 
-        public Member(int memberId, String name) {
-            this.memberId = memberId;
-            this.name = name;
+        final boolean ok;
+        final String message;
+
+        Outcome(boolean ok, String message) {
+            this.ok = ok;
+            this.message = message;
         }
     }
 
     // In-memory stores
-    private final Map<Integer, Book> books = new HashMap<>();
-    private final Map<Integer, Member> members = new HashMap<>();
+    private final BookStore books = openBookStore();
+    private final Map<Integer, Member> members = new ConcurrentHashMap<>();
+    private final BookIndex index = new BookIndex();
+    private final SortedCatalog catalog =
+            books instanceof TieredBookStore tiered ? new SortedCatalog(tiered) : new SortedCatalog();
+    private final LoanLedger loans = new LoanLedger();
+    private final CatalogStats stats = new CatalogStats();
+    private final IdSequences sequences = new IdSequences(SEQUENCE_FILE, ID_BLOCK);
+    private final IdSequences.Sequence bookIds = sequences.get("book");
+    private final IdSequences.Sequence memberIds = sequences.get("member");
+    // Changes hold the read side; compaction takes the write side so no record is
+    // appended between writing the snapshot and truncating the journal
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private volatile Journal journal;
+    // Compaction runs here rather than on the desk thread whose change crossed COMPACT_EVERY
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(daemon("journal-compact"));
+    private final AtomicBoolean compactQueued = new AtomicBoolean();
+    // Set when the snapshot on disk could not be read, so it is never overwritten by a partial catalog
+    private volatile boolean snapshotUnreadable;
+
+    private static BookStore openBookStore() {
+        if (HOT_BOOKS <= 0) return new HeapBookStore();
+        try {
+            return new TieredBookStore(RECORD_FILE, HOT_BOOKS);
+        } catch (IOException e) {
+            System.err.println("Unable to open " + RECORD_FILE + ", keeping all books on the heap: " + e.getMessage());
+            return new HeapBookStore();
+        }
+    }
+
+    // Every book goes in through here so the indexes and id sequence stay in step with the store
+    private void putBook(Book b) {
+        Book old = books.peek(b.bookId);
+        if (old != null) {
+            // before the store overwrites the old record, which the catalog may still read keys from
+            index.remove(old);
+            catalog.remove(old);
+            stats.removed(old);
+        }
+        books.put(b);
+        index.add(b);
+        catalog.add(b);
+        stats.added(b);
+        bookIds.observe(b.bookId);
+    }
+
+    private void putMember(Member m) {
+        members.put(m.memberId, m);
+        memberIds.observe(m.memberId);
+    }
 
     // Load data from files (if present)
     public void loadFromFile() {
@@ -74,91 +1949,446 @@ public class LibrarySystem {
             System.err.println("Unable to create data files: " + e.getMessage());
             return;
         }
+        sequences.load();
+
+        if (BINARY_SNAPSHOTS && Files.exists(SNAPSHOT_FILE)) {
+            loadBinarySnapshot();
+        } else {
+            loadTextFiles();
+        }
+
+        // Replay changes made since the last snapshot, then keep appending to the same log
+        int replayed = replayJournal();
+        try {
+            journal = new Journal(JOURNAL_FILE, FSYNC_POLICY, GROUP_COMMIT_SIZE, GROUP_COMMIT_MILLIS, replayed);
+        } catch (IOException e) {
+            System.err.println("Unable to open journal, falling back to full saves: " + e.getMessage());
+        }
+    }
+
+    private void loadTextFiles() {
+        try {
+            BulkLoader.Result<Book> loaded = loadBookFile(BOOK_FILE);
+            for (Book b : loaded.records()) putBook(b);
+            System.out.println(loaded.summary(BOOK_FILE));
+        } catch (IOException e) {
+            System.err.println("Error reading books file: " + e.getMessage());
+        }
+
+        try {
+            BulkLoader.Result<Member> loaded = loadMemberFile(MEMBER_FILE);
+            for (Member m : loaded.records()) putMember(m);
+            System.out.println(loaded.summary(MEMBER_FILE));
+        } catch (IOException e) {
+            System.err.println("Error reading members file: " + e.getMessage());
+        }
+
+        if (!Files.exists(LOAN_FILE)) return;
+        try {
+            BulkLoader.Result<Loan> loaded = loadLoanFile(LOAN_FILE);
+            for (Loan l : loaded.records()) restoreLoan(l);
+            System.out.println(loaded.summary(LOAN_FILE));
+        } catch (IOException e) {
+            System.err.println("Error reading loans file: " + e.getMessage());
+        }
+    }
+
+    // A snapshot loan belongs to the book's state as loaded, so it takes the book's version
+    private void restoreLoan(Loan l) {
+        Book b = books.get(l.bookId());
+        if (b == null || !b.isIssued()) return;
+        loans.open(b, new Loan(l.bookId(), l.memberId(), l.issuedAt(), l.dueAt(), b.version()));
+    }
+
+    private void loadBinarySnapshot() {
+        long start = System.nanoTime();
+        try {
+            BinarySnapshot.Contents snap = BinarySnapshot.read(SNAPSHOT_FILE);
+            for (Book b : snap.books()) putBook(b);
+            for (Member m : snap.members()) putMember(m);
+            for (Loan l : snap.loans()) restoreLoan(l);
+            System.out.printf("Loaded %d books and %d members from %s in %d ms%n",
+                    snap.books().size(), snap.members().size(), SNAPSHOT_FILE, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            snapshotUnreadable = true;
+            System.err.println("Error reading snapshot: " + e.getMessage());
+            System.err.println("Changes are kept in the journal; " + SNAPSHOT_FILE + " will not be overwritten.");
+        }
+    }
 
-        // Load books
-        try (BufferedReader br = Files.newBufferedReader(BOOK_FILE, StandardCharsets.UTF_8)) {
+    // Books file format: id,title,author,category,isIssued
+    private static BulkLoader.Result<Book> loadBookFile(Path file) throws IOException {
+        return BulkLoader.load(file, 5, line -> {
+            long id = line.intValue(0);
+            if (id == BulkLoader.BAD_INT) return null; // skip bad line
+            return new Book((int) id, line.string(1), line.string(2), line.string(3), line.isTrue(4));
+        });
+    }
+
+    // Members file format: id,name
+    private static BulkLoader.Result<Member> loadMemberFile(Path file) throws IOException {
+        return BulkLoader.load(file, 2, line -> {
+            long id = line.intValue(0);
+            return id == BulkLoader.BAD_INT ? null : new Member((int) id, line.string(1));
+        });
+    }
+
+    // Loans file format: bookId,memberId,issuedAt,dueAt
+    private static BulkLoader.Result<Loan> loadLoanFile(Path file) throws IOException {
+        return BulkLoader.load(file, 4, line -> {
+            long bookId = line.intValue(0);
+            long memberId = line.intValue(1);
+            long issuedAt = line.longValue(2);
+            long dueAt = line.longValue(3);
+            if (bookId == BulkLoader.BAD_INT || memberId == BulkLoader.BAD_INT
+                    || issuedAt == BulkLoader.BAD_INT || dueAt == BulkLoader.BAD_INT) return null;
+            return new Loan((int) bookId, (int) memberId, issuedAt, dueAt, 0);
+        });
+    }
+
+    // Returns the number of records in the journal
+    private int replayJournal() {
+        if (!Files.exists(JOURNAL_FILE)) return 0;
+        int count = 0;
+        try (BufferedReader br = Files.newBufferedReader(JOURNAL_FILE, StandardCharsets.UTF_8)) {
             String line;
             while ((line = br.readLine()) != null) {
-                // Expect format: id,title,author,category,isIssued
-                String[] parts = line.split(",", -1);
-                if (parts.length < 5) continue; // skip malformed line
+                applyRecord(line);
+                count++;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+        return count;
+    }
 
-                try {
-                    int id = Integer.parseInt(parts[0].trim());
-                    String title = parts[1].trim();
-                    String author = parts[2].trim();
-                    String category = parts[3].trim();
-                    boolean isIssued = Boolean.parseBoolean(parts[4].trim());
-                    books.put(id, new Book(id, title, author, category, isIssued));
-                } catch (NumberFormatException ignored) {
-                    // skip bad line
+    // Apply one journal record; malformed records (e.g. a torn last line) are skipped
+    private void applyRecord(String line) {
+        String[] parts = line.split(",", -1);
+        try {
+            switch (parts[0]) {
+                case "B" -> {
+                    if (parts.length < 6) return;
+                    int id = Integer.parseInt(parts[1].trim());
+                    putBook(new Book(id, parts[2].trim(), parts[3].trim(), parts[4].trim(),
+                            Boolean.parseBoolean(parts[5].trim())));
+                }
+                case "M" -> {
+                    if (parts.length < 3) return;
+                    int id = Integer.parseInt(parts[1].trim());
+                    putMember(new Member(id, parts[2].trim()));
+                }
+                case "I", "R" -> {
+                    if (parts.length < 2) return;
+                    Book b = books.get(Integer.parseInt(parts[1].trim()));
+                    if (b == null) return;
+                    boolean wasIssued = b.isIssued();
+                    if (parts.length >= 3) {
+                        int version = Integer.parseInt(parts[2].trim());
+                        b.restoreVersion(version);
+                        if (parts[0].equals("R")) {
+                            loans.close(b.bookId, version);
+                        } else if (parts.length >= 6) {
+                            loans.open(b, new Loan(b.bookId, Integer.parseInt(parts[3].trim()),
+                                    Long.parseLong(parts[4].trim()), Long.parseLong(parts[5].trim()), version));
+                        }
+                    } else if (parts[0].equals("I")) {
+                        b.markIssued(); // older records without a version are applied in order
+                    } else {
+                        b.markReturned();
+                    }
+                    if (b.isIssued() != wasIssued) {
+                        if (wasIssued) stats.returned(b); else stats.issued(b);
+                    }
                 }
+                default -> { }
             }
+        } catch (NumberFormatException ignored) {
+            // skip bad record
+        }
+    }
+
+    // Record a change; the caller holds the read side of snapshotLock.
+    // Without a journal this degrades to the old full rewrite.
+    private void log(String record) {
+        Journal j = journal;
+        if (j == null) {
+            saveSnapshot();
+            return;
+        }
+        try {
+            j.append(record);
         } catch (IOException e) {
-            System.err.println("Error reading books file: " + e.getMessage());
+            System.err.println("Error writing journal, saving full snapshot: " + e.getMessage());
+            saveSnapshot();
         }
+    }
 
-        // Load members
-        try (BufferedReader br = Files.newBufferedReader(MEMBER_FILE, StandardCharsets.UTF_8)) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                // Expect format: id,name
-                String[] parts = line.split(",", -1);
-                if (parts.length < 2) continue;
+    // Queue a compaction once the journal has grown past COMPACT_EVERY records; the caller
+    // returns straight away and only waits for the snapshot if its next change lands while
+    // the compactor holds snapshotLock. Call without holding snapshotLock.
+    private void maybeCompact() {
+        Journal j = journal;
+        if (j == null || j.recordCount() < COMPACT_EVERY || !compactQueued.compareAndSet(false, true)) return;
+        try {
+            compactor.execute(() -> {
                 try {
-                    int id = Integer.parseInt(parts[0].trim());
-                    String name = parts[1].trim();
-                    members.put(id, new Member(id, name));
-                } catch (NumberFormatException ignored) { }
-            }
+                    compact(COMPACT_EVERY);
+                } finally {
+                    compactQueued.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            compactQueued.set(false); // shutting down; shutdown() compacts anyway
+        }
+    }
+
+    // Fold the journal into a fresh snapshot of books.txt/members.txt and start an empty log
+    public void compact() {
+        compact(0);
+    }
+
+    private void compact(int minRecords) {
+        snapshotLock.writeLock().lock();
+        try {
+            Journal j = journal;
+            if (j != null && j.recordCount() < minRecords) return; // another thread got here first
+            if (!saveSnapshot()) return; // keep the journal if the snapshot failed
+            if (j == null) return;
+            j.reset();
         } catch (IOException e) {
-            System.err.println("Error reading members file: " + e.getMessage());
+            System.err.println("Error truncating journal: " + e.getMessage());
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    public void shutdown() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compact();
+        sequences.close();
+        snapshotLock.writeLock().lock();
+        try {
+            if (journal == null) return;
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing journal: " + e.getMessage());
+        } finally {
+            journal = null;
+            books.close();
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    // Write a snapshot in the configured format
+    private boolean saveSnapshot() {
+        if (snapshotUnreadable) return false;
+        return BINARY_SNAPSHOTS ? saveBinarySnapshot() : saveToFile();
+    }
+
+    public synchronized boolean saveBinarySnapshot() {
+        try {
+            BinarySnapshot.write(SNAPSHOT_FILE, books.values(), members.values(), loans.all());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving snapshot: " + e.getMessage());
+            return false;
         }
     }
 
-    // Save data to files
-    public void saveToFile() {
+    // Save data to files. Each file is written to a temp file and moved into place,
+    // so a crash never leaves a half-written snapshot. Returns false on any error.
+    public synchronized boolean saveToFile() {
+        return writeTextFiles(books.values(), members.values(), loans.all());
+    }
+
+    private static boolean writeTextFiles(Collection<Book> books, Collection<Member> members, Collection<Loan> loans) {
+        Path bookTmp = BOOK_FILE.resolveSibling(BOOK_FILE.getFileName() + ".tmp");
+        Path memberTmp = MEMBER_FILE.resolveSibling(MEMBER_FILE.getFileName() + ".tmp");
+        Path loanTmp = LOAN_FILE.resolveSibling(LOAN_FILE.getFileName() + ".tmp");
+
         // Save books
-        try (BufferedWriter bw = Files.newBufferedWriter(BOOK_FILE, StandardCharsets.UTF_8)) {
-            for (Book b : books.values()) {
+        try (BufferedWriter bw = Files.newBufferedWriter(bookTmp, StandardCharsets.UTF_8)) {
+            for (Book b : books) {
                 // CSV: id,title,author,category,isIssued
                 bw.write(String.format("%d,%s,%s,%s,%b",
                         b.bookId,
                         escapeCsv(b.title),
                         escapeCsv(b.author),
                         escapeCsv(b.category),
-                        b.isIssued));
+                        b.isIssued()));
                 bw.newLine();
             }
         } catch (IOException e) {
             System.err.println("Error saving books: " + e.getMessage());
+            return false;
         }
 
         // Save members
-        try (BufferedWriter bw = Files.newBufferedWriter(MEMBER_FILE, StandardCharsets.UTF_8)) {
-            for (Member m : members.values()) {
+        try (BufferedWriter bw = Files.newBufferedWriter(memberTmp, StandardCharsets.UTF_8)) {
+            for (Member m : members) {
                 bw.write(String.format("%d,%s", m.memberId, escapeCsv(m.name)));
                 bw.newLine();
             }
         } catch (IOException e) {
             System.err.println("Error saving members: " + e.getMessage());
+            return false;
+        }
+
+        // Save loans. CSV: bookId,memberId,issuedAt,dueAt
+        try (BufferedWriter bw = Files.newBufferedWriter(loanTmp, StandardCharsets.UTF_8)) {
+            for (Loan l : loans) {
+                bw.write(l.bookId() + "," + l.memberId() + "," + l.issuedAt() + "," + l.dueAt());
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving loans: " + e.getMessage());
+            return false;
+        }
+
+        try {
+            Files.move(bookTmp, BOOK_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(memberTmp, MEMBER_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(loanTmp, LOAN_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error replacing data files: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    // Migration: books.txt/members.txt -> library.snap
+    private static void convertToBinary() {
+        warnIfJournalPending();
+        try {
+            List<Book> bookList = loadBookFile(BOOK_FILE).records();
+            List<Member> memberList = loadMemberFile(MEMBER_FILE).records();
+            List<Loan> loanList = Files.exists(LOAN_FILE) ? loadLoanFile(LOAN_FILE).records() : List.of();
+            BinarySnapshot.write(SNAPSHOT_FILE, bookList, memberList, loanList);
+            System.out.printf("Wrote %d books and %d members to %s%n", bookList.size(), memberList.size(), SNAPSHOT_FILE);
+        } catch (IOException e) {
+            System.err.println("Conversion failed: " + e.getMessage());
+        }
+    }
+
+    // Migration: library.snap -> books.txt/members.txt
+    private static void convertToText() {
+        warnIfJournalPending();
+        try {
+            BinarySnapshot.Contents snap = BinarySnapshot.read(SNAPSHOT_FILE);
+            if (writeTextFiles(snap.books(), snap.members(), snap.loans())) {
+                System.out.printf("Wrote %d books to %s and %d members to %s%n",
+                        snap.books().size(), BOOK_FILE, snap.members().size(), MEMBER_FILE);
+            }
+        } catch (IOException e) {
+            System.err.println("Conversion failed: " + e.getMessage());
         }
     }
 
+    // The converters only copy snapshots; changes still in the journal are not included
+    private static void warnIfJournalPending() {
+        try {
+            if (Files.exists(JOURNAL_FILE) && Files.size(JOURNAL_FILE) > 0) {
+                System.err.println("Warning: " + JOURNAL_FILE + " has changes not yet in a snapshot. "
+                        + "Start and exit the library once to compact it before converting.");
+            }
+        } catch (IOException ignored) { }
+    }
+
     // Very small CSV escape (commas can break parsing). For the simple format used here,
     // replace commas with spaces. (Alternatively, use a proper CSV library.)
     private static String escapeCsv(String s) {
         return s == null ? "" : s.replace(",", " ");
     }
 
-    // Generate next unique book id (1 + current max id)
+    // Generate next unique book id
     private int nextBookId() {
-        return books.keySet().stream().max(Integer::compareTo).map(i -> i + 1).orElse(1);
+        return bookIds.next();
     }
 
-    // Generate next unique member id (1 + current max id)
+    // Generate next unique member id
     private int nextMemberId() {
-        return members.keySet().stream().max(Integer::compareTo).map(i -> i + 1).orElse(1);
+        return memberIds.next();
+    }
+
+    // Core operations, shared by the console menu and the server. Safe to call from many threads.
+    public Book addBook(String title, String author, String category) {
+        Book b = new Book(nextBookId(), title, author, category);
+        snapshotLock.readLock().lock();
+        try {
+            putBook(b);
+            log(String.format("B,%d,%s,%s,%s,%b", b.bookId, escapeCsv(title), escapeCsv(author), escapeCsv(category), false));
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        maybeCompact();
+        return b;
+    }
+
+    public Member addMember(String name) {
+        Member m = new Member(nextMemberId(), name);
+        snapshotLock.readLock().lock();
+        try {
+            putMember(m);
+            log(String.format("M,%d,%s", m.memberId, escapeCsv(name)));
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        maybeCompact();
+        return m;
+    }
+
+    public Outcome issueBook(int bookId, int memberId) {
+        Book b = books.get(bookId);
+        if (b == null) return Outcome.BOOK_NOT_FOUND;
+        if (!members.containsKey(memberId)) return Outcome.MEMBER_NOT_FOUND;
+
+        snapshotLock.readLock().lock();
+        try {
+            int version = b.tryIssue();
+            if (version < 0) return Outcome.ALREADY_ISSUED;
+            stats.issued(b);
+            long now = System.currentTimeMillis();
+            Loan loan = new Loan(bookId, memberId, now, now + LOAN_DAYS * 86_400_000L, version);
+            loans.open(b, loan);
+            log("I," + bookId + "," + version + "," + memberId + "," + loan.issuedAt() + "," + loan.dueAt());
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        maybeCompact();
+        return Outcome.ISSUED;
+    }
+
+    public Outcome returnBook(int bookId) {
+        Book b = books.get(bookId);
+        if (b == null) return Outcome.BOOK_NOT_FOUND;
+
+        snapshotLock.readLock().lock();
+        try {
+            int version = b.tryReturn();
+            if (version < 0) return Outcome.NOT_ISSUED;
+            stats.returned(b);
+            loans.close(bookId, version);
+            log("R," + bookId + "," + version);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        maybeCompact();
+        return Outcome.RETURNED;
+    }
+
+    public List<Book> search(String query) {
+        List<Book> found = new ArrayList<>();
+        for (int id : index.search(query)) {
+            Book b = books.get(id);
+            if (b != null) found.add(b);
+        }
+        return found;
     }
 
     // User operations (all receive the shared Scanner to avoid multiple open scanners)
@@ -171,22 +2401,16 @@ public class LibrarySystem {
         System.out.print("Enter Category: ");
         String category = sc.nextLine().trim();
 
-        int id = nextBookId();
-        Book b = new Book(id, title, author, category);
-        books.put(id, b);
-        saveToFile();
-
-        System.out.println("Added book with ID " + id);
+        Book b = addBook(title, author, category);
+        System.out.println("Added book with ID " + b.bookId);
     }
 
     public void addMember(Scanner sc) {
         System.out.print("Enter member name: ");
         sc.nextLine(); // consume leftover newline if present
         String name = sc.nextLine().trim();
-        int id = nextMemberId();
-        members.put(id, new Member(id, name));
-        saveToFile();
-        System.out.println("Added member with ID " + id);
+        Member m = addMember(name);
+        System.out.println("Added member with ID " + m.memberId);
     }
 
     public void issueBook(Scanner sc) {
@@ -194,69 +2418,111 @@ public class LibrarySystem {
         int bid = readInt(sc);
         System.out.print("Enter Member ID: ");
         int mid = readInt(sc);
+        System.out.println(issueBook(bid, mid).message);
+    }
 
-        if (!books.containsKey(bid)) {
-            System.out.println("Book ID not found.");
-            return;
-        }
+    public void returnBook(Scanner sc) {
+        System.out.print("Enter Book ID: ");
+        int bid = readInt(sc);
+        System.out.println(returnBook(bid).message);
+    }
+
+    public void searchBook(Scanner sc) {
+        sc.nextLine(); // consume newline
+        System.out.println("Search words match title, author or category.");
+        System.out.println("Use OR, field:word (title/author/category) and word* for prefixes.");
+        System.out.print("Enter search: ");
+        String query = sc.nextLine().trim();
+
+        List<Book> found = search(query);
+        for (Book b : found) b.displayBookDetails();
+        if (found.isEmpty()) System.out.println("Book not found.");
+    }
+
+    public void showMemberLoans(Scanner sc) {
+        System.out.print("Enter Member ID: ");
+        int mid = readInt(sc);
         if (!members.containsKey(mid)) {
             System.out.println("Member ID not found.");
             return;
         }
+        List<Loan> held = loans.loansOf(mid);
+        if (held.isEmpty()) System.out.println("Member has no books issued.");
+        for (Loan l : held) System.out.println(l.details());
+    }
 
-        Book b = books.get(bid);
-        if (b.isIssued) {
-            System.out.println("Book is already issued.");
-            return;
-        }
-
-        b.markIssued();
-        saveToFile();
-        System.out.println("Book issued successfully.");
+    public void showOverdue() {
+        List<Loan> overdue = loans.overdue(System.currentTimeMillis());
+        if (overdue.isEmpty()) System.out.println("No overdue books.");
+        for (Loan l : overdue) System.out.println(l.details());
     }
 
-    public void returnBook(Scanner sc) {
-        System.out.print("Enter Book ID: ");
-        int bid = readInt(sc);
-        Book b = books.get(bid);
-        if (b == null) {
-            System.out.println("Book ID not found.");
-            return;
+    // Recount the statistics with the catalog frozen; returns the mismatches that were repaired
+    public List<String> verifyStats() {
+        snapshotLock.writeLock().lock();
+        try {
+            return stats.verify(books.values());
+        } finally {
+            snapshotLock.writeLock().unlock();
         }
-        if (!b.isIssued) {
-            System.out.println("Book is not currently issued.");
-            return;
+    }
+
+    public void showStatistics(Scanner sc) {
+        System.out.print("How many to show: ");
+        int n = Math.max(1, readInt(sc));
+        for (CatalogStats.Field f : CatalogStats.Field.values()) {
+            System.out.println("Top " + n + " by " + f.name().toLowerCase(Locale.ROOT) + ":");
+            for (CatalogStats.Entry e : stats.top(f, n, false)) {
+                System.out.printf("  %-30s books: %d | issued: %d%n", e.name(), e.books(), e.issued());
+            }
         }
-        b.markReturned();
-        saveToFile();
-        System.out.println("Book returned successfully.");
     }
 
-    public void searchBook(Scanner sc) {
-        sc.nextLine(); // consume newline
-        System.out.print("Enter Title to search: ");
-        String title = sc.nextLine().trim();
+    public void checkStatistics() {
+        List<String> problems = verifyStats();
+        if (problems.isEmpty()) {
+            System.out.println("Counters match a full scan.");
+        } else {
+            System.out.println("Counters repaired after a full scan:");
+            for (String p : problems) System.out.println("  " + p);
+        }
+    }
 
-        boolean found = false;
-        for (Book b : books.values()) {
-            if (b.title.equalsIgnoreCase(title)) {
-                b.displayBookDetails();
-                found = true;
-            }
+    // Books of a catalog page, in page order
+    private List<Book> booksOf(SortedCatalog.Page page) {
+        List<Book> out = new ArrayList<>(page.bookIds().size());
+        for (int id : page.bookIds()) {
+            Book b = books.get(id);
+            if (b != null) out.add(b);
         }
-        if (!found) System.out.println("Book not found.");
+        return out;
     }
 
-    public void listBooks() {
+    public void listBooks(Scanner sc) {
         if (books.isEmpty()) {
             System.out.println("No books in the system.");
             return;
         }
-        List<Book> sorted = new ArrayList<>(books.values());
-        Collections.sort(sorted);
-        for (Book b : sorted) {
-            b.displayBookDetails();
-            System.out.println("-------------------------------------------------");
+        System.out.print("Sort by (1. Title  2. Author  3. Category): ");
+        SortedCatalog.Order order = switch (readInt(sc)) {
+            case 2 -> SortedCatalog.Order.AUTHOR;
+            case 3 -> SortedCatalog.Order.CATEGORY;
+            default -> SortedCatalog.Order.TITLE;
+        };
+
+        int pageNo = 0;
+        while (true) {
+            SortedCatalog.Page page = catalog.page(order, pageNo, PAGE_SIZE);
+            for (Book b : booksOf(page)) {
+                b.displayBookDetails();
+                System.out.println("-------------------------------------------------");
+            }
+            int pages = (page.total() + PAGE_SIZE - 1) / PAGE_SIZE;
+            if (pages <= 1) return;
+            System.out.printf("Page %d of %d. Enter page number (0 to stop): ", pageNo + 1, pages);
+            int next = readInt(sc);
+            if (next <= 0) return;
+            pageNo = Math.min(next, pages) - 1;
         }
     }
 
@@ -269,11 +2535,44 @@ public class LibrarySystem {
         return sc.nextInt();
     }
 
+    // Serve desks over a local socket until the process is stopped
+    private static void runServer(LibrarySystem sys, int port) {
+        Server server;
+        try {
+            server = new Server(sys, port);
+        } catch (IOException e) {
+            System.err.println("Unable to start server: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ignored) { }
+            sys.shutdown();
+        }));
+        System.out.println("Library server listening on 127.0.0.1:" + server.port());
+        server.serve();
+    }
+
     // Main menu
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--to-binary")) {
+            convertToBinary();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--to-text")) {
+            convertToText();
+            return;
+        }
+
         LibrarySystem sys = new LibrarySystem();
         sys.loadFromFile();
 
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(sys, args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+            return;
+        }
+
         try (Scanner sc = new Scanner(System.in)) {
             while (true) {
                 System.out.println("\n=== City Library Digital Management System ===");
@@ -282,8 +2581,12 @@ public class LibrarySystem {
                 System.out.println("3. Issue Book");
                 System.out.println("4. Return Book");
                 System.out.println("5. List Books");
-                System.out.println("6. Search Book by Title");
-                System.out.println("7. Exit");
+                System.out.println("6. Search Books");
+                System.out.println("7. Member Loans");
+                System.out.println("8. Overdue Books");
+                System.out.println("9. Statistics");
+                System.out.println("10. Check Statistics");
+                System.out.println("11. Exit");
                 System.out.print("Enter choice: ");
 
                 int choice = -1;
@@ -298,13 +2601,19 @@ public class LibrarySystem {
                     case 2 -> sys.addMember(sc);
                     case 3 -> sys.issueBook(sc);
                     case 4 -> sys.returnBook(sc);
-                    case 5 -> sys.listBooks();
+                    case 5 -> sys.listBooks(sc);
                     case 6 -> sys.searchBook(sc);
-                    case 7 -> {
+                    case 7 -> sys.showMemberLoans(sc);
+                    case 8 -> sys.showOverdue();
+                    case 9 -> sys.showStatistics(sc);
+                    case 10 -> sys.checkStatistics();
+                    case 11 -> {
+                        System.out.println(sys.books.stats());
+                        sys.shutdown();
                         System.out.println("Goodbye.");
                         return;
                     }
-                    default -> System.out.println("Invalid choice. Enter 1-7.");
+                    default -> System.out.println("Invalid choice. Enter 1-11.");
                 }
             }
         }